@@ -5,9 +5,11 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.BiFunction;
 
+import adver.sarius.phwar.ai.CancellationToken;
 import adver.sarius.phwar.ai.PhwarAI;
-import adver.sarius.phwar.ai.PhwarAISinglePath;
+import adver.sarius.phwar.ai.PhwarAIAlphaBeta;
 import adver.sarius.phwar.ai.PhwarAITest;
+import adver.sarius.phwar.ai.data.OpeningBook;
 import adver.sarius.phwar.model.IllegalCaptureException;
 import adver.sarius.phwar.model.IllegalMoveException;
 import adver.sarius.phwar.model.Particle;
@@ -32,13 +34,25 @@ public class PhwarBoardController {
 	private StringProperty feedback;
 	private State state = State.NOT_STARTED;
 
-	private PhwarAI[] strategies = new PhwarAI[] { new PhwarAISinglePath(2), new PhwarAISinglePath(2), new PhwarAITest() };
+	private static final int AI_THREADS = Runtime.getRuntime().availableProcessors();
+	private PhwarAI[] strategies = new PhwarAI[] { new PhwarAIAlphaBeta(20, 1000, 64, AI_THREADS),
+			new PhwarAIAlphaBeta(20, 1000, 64, AI_THREADS), new PhwarAITest() };
 	private int captureDelay = 000;
 	private boolean autoSkip = true;
+	/** Stops the computation of the AI in progress, or null. */
+	private CancellationToken computation;
+	/** Runs the computation of the AI in progress, or null. */
+	private Service<Void> service;
 
 	public PhwarBoardController(PhwarBoard board, Button buttonNext) {
 		this.board = board;
 		this.buttonNext = buttonNext;
+		OpeningBook book = OpeningBook.openDefault();
+		for (PhwarAI ai : strategies) {
+			if (ai instanceof PhwarAIAlphaBeta) {
+				((PhwarAIAlphaBeta) ai).setOpeningBook(book);
+			}
+		}
 		buttonNext.setOnAction(this::handleButtonEvent);
 		feedback = new SimpleStringProperty("Ready!");
 		if (autoSkip) {
@@ -204,15 +218,21 @@ public class PhwarBoardController {
 		PhwarAI ai = strategies[board.getCurrentPlayer()];
 		if (ai != null) {// not wating for player input
 			state = State.COMPUTING;
+			CancellationToken token = new CancellationToken();
+			computation = token;
 			// Can't modify GUI in other threads. But doing the computation there would
 			// block the GUI.
-			Service<Void> service = new Service<Void>() {
+			service = new Service<Void>() {
 				@Override
 				protected Task<Void> createTask() {
 					return new Task<Void>() {
 						@Override
 						protected Void call() throws Exception {
-							ai.computeTurn(board);
+							if (!ai.computeTurn(board, token, Long.MAX_VALUE,
+									p -> Platform.runLater(() -> feed("Thinking... " + p)))) {
+								return null;
+							}
+							Platform.runLater(() -> feedClear());
 							CountDownLatch latch1 = new CountDownLatch(1);
 							Platform.runLater(() -> {
 								ai.executeComputedMove(board);
@@ -243,6 +263,28 @@ public class PhwarBoardController {
 		}
 	}
 
+	/**
+	 * Stops the computation of the AI in progress within a few milliseconds, and
+	 * all pondering. Should be called before the window gets closed or the game
+	 * restarted.
+	 */
+	public void shutdown() {
+		if (computation != null) {
+			computation.cancel();
+			computation = null;
+		}
+		if (service != null) {
+			// also interrupts the waiting for the captures
+			service.cancel();
+			service = null;
+		}
+		for (PhwarAI ai : strategies) {
+			if (ai != null) {
+				ai.stopPondering();
+			}
+		}
+	}
+
 	private void finishedTurn() {
 		state = State.FINISHED_TURN;
 		if (autoSkip) {
@@ -256,11 +298,25 @@ public class PhwarBoardController {
 		if (board.hasWon()) {
 			state = State.WON;
 			feed("Congratulation! You have won!");
+			for (PhwarAI ai : strategies) {
+				if (ai != null) {
+					ai.stopPondering();
+				}
+			}
 			return;
 		}
 		// TODO: Exceptions
 		board.nextPlayer();
 		state = State.READY;
+		// let the AIs think while waiting for a human. Not while another AI is
+		// thinking, since pondering uses as many threads as the search
+		if (strategies[board.getCurrentPlayer()] == null) {
+			for (int i = 0; i < strategies.length; i++) {
+				if (strategies[i] != null && i != board.getCurrentPlayer()) {
+					strategies[i].ponder(board);
+				}
+			}
+		}
 		doYourMove();
 	}
 }
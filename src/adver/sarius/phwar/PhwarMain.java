@@ -16,6 +16,8 @@ import javafx.stage.Stage;
 
 public class PhwarMain extends Application {
 
+	private PhwarBoardController controller;
+
 	// stage and scene
 	// stage: top-level container
 	// scene: content container
@@ -45,7 +47,7 @@ public class PhwarMain extends Application {
 		SideBarPane sideBar = new SideBarPane(board);
 		layout.setLeft(sideBar);
 		
-		PhwarBoardController controller = new PhwarBoardController(board, sideBar.getButtonNext());
+		controller = new PhwarBoardController(board, sideBar.getButtonNext());
 		PhwarBoardView view = new PhwarBoardView(board, hexaSize, controller::handleHexagonClick);
 		controller.initGetHexagonFunc(view::getHexagon);
 		layout.setCenter(view);
@@ -65,7 +67,9 @@ public class PhwarMain extends Application {
 	
 	@Override
 	public void stop() {
-//		System.out.println("stoped");
+		if (controller != null) {
+			controller.shutdown();
+		}
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,736 @@
+package adver.sarius.phwar.ai;
+
+import java.util.Arrays;
+import java.util.List;
+
+import adver.sarius.phwar.ai.data.Tablebase;
+import adver.sarius.phwar.ai.data.TablebaseProber;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Negamax search with alpha-beta pruning over whole turns. One turn is a move
+ * followed by one of the distinct results of the captures after it, see
+ * {@link CaptureChainGenerator}. The rating is the same as in
+ * {@link PhwarAISinglePath}: a win within fewer turns is better than a win
+ * within more turns, and after the last turn the particle count of the player
+ * is compared to the count of all other players, unless another
+ * {@link Evaluator} is set. Everything is done in place on the given board
+ * with {@link PhwarBoard#doMove(int, int) doMove} and
+ * {@link PhwarBoard#undo() undo}, using buffers that are reused for every
+ * search. Not thread safe, each thread needs its own instance.
+ * <p>
+ * The search can be stopped at a deadline. Searching the same position again
+ * with more turns reuses the result of the previous search, by trying its best
+ * move and captures first. With a {@link TranspositionTable} the result of
+ * every turn is remembered, so boards reached by another order of moves and
+ * captures don't need to be searched again, and the best move of a board is
+ * tried first. The other moves are sorted by {@link MoveOrdering}.
+ * <p>
+ * With a quiescence budget, the board is not rated right after the last turn
+ * if the next player can still win or capture something. Then only the moves
+ * that win or allow captures are searched some turns further, until the board
+ * is quiet or the budget is used up. Each player may also stop there and take
+ * the rating of the board instead, since he could do another move.
+ * <p>
+ * With {@link TablebaseProber tablebases}, the boards after the last turn
+ * with few enough particles are looked up instead of rated. Their results are
+ * exact, so they are rated like wins and losses found by the search.
+ */
+class AlphaBetaSearch {
+
+	/**
+	 * Value of winning within the current turn. A win within turn t is rated as
+	 * WIN - t, which orders the turns the same way as the WIN / t of
+	 * {@link PhwarAISinglePath}, but can be shifted between plies.
+	 */
+	static final int WIN = 1000000;
+	/** Bigger than every possible rating. */
+	static final int INFINITY = WIN + 1;
+	/** Marks a turn without a move, because no particle can move. */
+	static final int NO_MOVE = -1;
+	/** Every rating above this, or below the negative, is a win or loss. */
+	private static final int WIN_BOUND = WIN - 1000;
+	/** Maximum amount of turns searched after the last turn. */
+	private static final int MAX_QUIESCENCE_TURNS = 6;
+
+	/** Generated moves of each turn, indexed by turn. */
+	private int[][] moveBuffers = new int[0][];
+	/** Capture results of each turn, indexed by turn. */
+	private CaptureChainGenerator[] chainGenerators = new CaptureChainGenerator[0];
+	/** The geometry the buffers were allocated for. */
+	private BoardGeometry geometry;
+	/** The board that gets searched. */
+	private PhwarBoard board;
+	/** Last turn to search, after that the board gets rated. */
+	private int maxTurns;
+	/** Amount of turns searched since the last call of search. */
+	private long nodes;
+	/** Rates the boards after the last turn. */
+	private Evaluator evaluator = AlphaBetaSearch::evaluate;
+	/** Results of already searched boards, or null to not remember them. */
+	private TranspositionTable table;
+	/**
+	 * Time of {@link System#nanoTime()} to stop searching at. Might be changed by
+	 * another thread while searching.
+	 */
+	private volatile long deadline = Long.MAX_VALUE;
+	/** Set by another thread to stop searching. */
+	private volatile boolean aborted;
+	/** Stops the search once cancelled, or null. */
+	private volatile CancellationToken token;
+	/** True if the last search ran out of time and its result is incomplete. */
+	private boolean stopped;
+	/** Sorts the moves, with killers and history collected by all searches. */
+	private final MoveOrdering ordering = new MoveOrdering();
+	/** Hash of the board of the last search. */
+	private long searchHash;
+	/** Turns of the last search, where one move was good enough to skip the others. */
+	private long cutoffs;
+	/** Amount of those cutoffs that happened on the first tried move. */
+	private long firstMoveCutoffs;
+	/** Turns that may be searched after each board of the last turn. */
+	private int quiescenceBudget;
+	/** Turns left of the budget for the current board of the last turn. */
+	private int quiescenceLeft;
+	/** Amount of turns searched after the last turn since the last call of search. */
+	private long quiescenceNodes;
+	/** Amount of boards rated since the last call of search. */
+	private long leaves;
+	/** Amount of table lookups since the last call of search. */
+	private long tableProbes;
+	/** Amount of table lookups that found the board. */
+	private long tableHits;
+	/** Gets the counters after every search, or null. */
+	private SearchStats stats;
+	/** Exact results of the boards with few particles, or null. */
+	private TablebaseProber tablebases;
+
+	/** Moves of the first turn, ordered by the previous searches. */
+	private int[] rootMoves = new int[0];
+	/** Amount of moves in rootMoves, or -1 if there are none yet. */
+	private int rootMoveCount = -1;
+	/** Hash of the board the root moves were generated for. */
+	private long rootHash;
+	/** Best move of the previous search, or NO_MOVE. */
+	private int previousBestMove = NO_MOVE;
+	/** Best captures of the previous search, as index of the capture result. */
+	private int previousBestChain = -1;
+
+	/** The move of the first turn that is searched right now. */
+	private int rootMove;
+	/** Best found move of the first turn, or NO_MOVE. */
+	private int bestMove;
+	/** Captures after the best move, or null for no captures. */
+	private List<MoveCapture> bestCaptures;
+	/** Index of the capture result of the best captures, or -1. */
+	private int bestChain;
+
+	/**
+	 * Searches the best turn for the current player of the board. The board is
+	 * modified during the search, but all changes are reverted before returning.
+	 *
+	 * @param board
+	 *            the board to search the turn for.
+	 * @param maxTurns
+	 *            amount of turns to look ahead, including the own one.
+	 * @return the rating of the best turn, from the view of the current player.
+	 */
+	int search(PhwarBoard board, int maxTurns) {
+		return search(board, 1, maxTurns, -INFINITY, INFINITY);
+	}
+
+	/**
+	 * Searches only a part of the turns, for example after the first turn is
+	 * already done by someone else. Only a search starting at turn 1 reports the
+	 * best move.
+	 *
+	 * @param board
+	 *            the board to search the turn for.
+	 * @param firstTurn
+	 *            the turn the current player of the board is in. Wins are rated
+	 *            by the turn they happen in.
+	 * @param maxTurns
+	 *            the last turn to search.
+	 * @param alpha
+	 *            the rating the current player already can reach elsewhere.
+	 * @param beta
+	 *            the rating the other player already can reach elsewhere, from the
+	 *            view of the current player.
+	 * @return the rating of the best turn, from the view of the current player.
+	 *         Might be any value not above alpha if the rating is not above alpha,
+	 *         and any value not below beta if the rating is not below beta.
+	 */
+	int search(PhwarBoard board, int firstTurn, int maxTurns, int alpha, int beta) {
+		this.board = board;
+		this.maxTurns = maxTurns;
+		this.nodes = 0;
+		this.cutoffs = 0;
+		this.firstMoveCutoffs = 0;
+		this.quiescenceNodes = 0;
+		this.leaves = 0;
+		this.tableProbes = 0;
+		this.tableHits = 0;
+		this.stopped = false;
+		this.bestMove = NO_MOVE;
+		this.bestCaptures = null;
+		this.bestChain = -1;
+		ensureBuffers(board.getGeometry(), quiescenceBudget > 0 ? maxTurns + MAX_QUIESCENCE_TURNS : maxTurns);
+		ordering.ensureCapacity(board.getGeometry(), maxTurns);
+		if (board.getHash() != searchHash) {
+			searchHash = board.getHash();
+			ordering.newPosition();
+		}
+		int value = rateTurn(firstTurn, alpha, beta);
+		if (!stopped && firstTurn == 1) {
+			rememberBest();
+		}
+		if (stats != null) {
+			stats.add(this);
+		}
+		return value;
+	}
+
+	/**
+	 * Sets the time to stop searching. The search in progress will return as soon
+	 * as possible after that, and its result must not be used. Can be called by
+	 * any thread.
+	 *
+	 * @param deadline
+	 *            time of {@link System#nanoTime()} to stop at, or
+	 *            {@link Long#MAX_VALUE} to never stop.
+	 */
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Stops the search in progress and all following ones as soon as possible,
+	 * until {@link #resume()} is called. Can be called by any thread.
+	 */
+	void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * Allows searching again after {@link #abort()}.
+	 */
+	void resume() {
+		aborted = false;
+	}
+
+	/**
+	 * Lets the searches stop when the token gets cancelled, in addition to the
+	 * deadline and {@link #abort()}. Can be called by any thread.
+	 *
+	 * @param token
+	 *            the token to check while searching, or null for none.
+	 */
+	void setToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	/**
+	 * Checked every 16 turns, so the search stops within a millisecond. Reading
+	 * the clock costs much less than a turn.
+	 */
+	private boolean isInterrupted() {
+		CancellationToken token = this.token;
+		return aborted || isPast(deadline) || token != null && token.isCancelled();
+	}
+
+	/**
+	 * @param deadline
+	 *            time of {@link System#nanoTime()}, or {@link Long#MAX_VALUE} for
+	 *            never.
+	 * @return true if the deadline has passed.
+	 */
+	static boolean isPast(long deadline) {
+		return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * @param quiescenceBudget
+	 *            amount of turns that may be searched after each board of the
+	 *            last turn, or 0 to rate the board right away. Should not be
+	 *            changed while searching.
+	 */
+	void setQuiescenceBudget(int quiescenceBudget) {
+		this.quiescenceBudget = quiescenceBudget;
+	}
+
+	/**
+	 * @param evaluator
+	 *            rates the boards after the last turn. By default
+	 *            {@link #evaluate(PhwarBoard)}. Should not be changed while
+	 *            searching.
+	 */
+	void setEvaluator(Evaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	/**
+	 * @param stats
+	 *            gets the counters after every search, or null. Can be shared by
+	 *            the searches of multiple threads.
+	 */
+	void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @param tablebases
+	 *            the results to look up the boards after the last turn in, or
+	 *            null to always rate them. Can be shared by the searches of
+	 *            multiple threads.
+	 */
+	void setTablebases(TablebaseProber tablebases) {
+		this.tablebases = tablebases;
+	}
+
+	/**
+	 * @param table
+	 *            the table to remember the results in, or null to not use any.
+	 */
+	void setTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * @return true if the last search was stopped at the deadline or aborted
+	 *         before it was complete.
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return the best found move of the last search, or NO_MOVE if no particle
+	 *         could move.
+	 */
+	int getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * @return the captures after the best move, or null if there is nothing to
+	 *         capture.
+	 */
+	List<MoveCapture> getBestCaptures() {
+		return bestCaptures;
+	}
+
+	/**
+	 * @return amount of turns searched by the last search.
+	 */
+	long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return amount of turns of the last search, where one move was good enough
+	 *         to skip the other moves.
+	 */
+	long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * @return amount of those cutoffs that happened at the first tried move. The
+	 *         closer to {@link #getCutoffs()}, the better the moves are sorted.
+	 */
+	long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	/**
+	 * @return amount of turns searched after the last turn by the last search.
+	 *         They are included in {@link #getNodes()}.
+	 */
+	long getQuiescenceNodes() {
+		return quiescenceNodes;
+	}
+
+	/**
+	 * @return amount of boards rated by the evaluator in the last search.
+	 */
+	long getLeaves() {
+		return leaves;
+	}
+
+	/**
+	 * @return amount of lookups in the table by the last search.
+	 */
+	long getTableProbes() {
+		return tableProbes;
+	}
+
+	/**
+	 * @return amount of lookups of the last search that found the board.
+	 */
+	long getTableHits() {
+		return tableHits;
+	}
+
+	private void ensureBuffers(BoardGeometry geometry, int maxTurns) {
+		if (geometry != this.geometry) {
+			this.geometry = geometry;
+			moveBuffers = new int[0][];
+			chainGenerators = new CaptureChainGenerator[0];
+		}
+		if (moveBuffers.length <= maxTurns) {
+			int oldLength = moveBuffers.length;
+			moveBuffers = Arrays.copyOf(moveBuffers, maxTurns + 1);
+			chainGenerators = Arrays.copyOf(chainGenerators, maxTurns + 1);
+			for (int turn = oldLength; turn <= maxTurns; turn++) {
+				moveBuffers[turn] = new int[MoveGenerator.getMaxMoves(geometry)];
+				chainGenerators[turn] = new CaptureChainGenerator(geometry);
+			}
+		}
+	}
+
+	/**
+	 * Moves the best move of the completed search to the front of the root moves,
+	 * so the next search tries it first.
+	 */
+	private void rememberBest() {
+		previousBestMove = bestMove;
+		previousBestChain = bestChain;
+		moveToFront(rootMoves, rootMoveCount, bestMove);
+	}
+
+	/**
+	 * Generates the moves of the first turn, unless they are already known from
+	 * the previous search of the same board.
+	 *
+	 * @param hashMove
+	 *            the best move known from the table, or NO_MOVE.
+	 * @return amount of moves in rootMoves.
+	 */
+	private int generateRootMoves(int hashMove) {
+		long hash = board.getHash();
+		if (rootMoveCount < 0 || hash != rootHash) {
+			if (rootMoves.length < moveBuffers[1].length) {
+				rootMoves = new int[moveBuffers[1].length];
+			}
+			rootMoveCount = MoveGenerator.generateMoves(board, rootMoves, 0);
+			ordering.sort(board, rootMoves, rootMoveCount, 1, hashMove, true);
+			rootHash = hash;
+			previousBestMove = NO_MOVE;
+			previousBestChain = -1;
+		}
+		return rootMoveCount;
+	}
+
+	// modifies the board, but reverts all changes before returning
+	private int rateTurn(int turn, int alpha, int beta) {
+		if ((++nodes & 15) == 0 && isInterrupted()) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+		// nothing is better than winning right now
+		if (alpha >= WIN - turn) {
+			return alpha;
+		}
+		beta = Math.min(beta, WIN - turn);
+		int depth = maxTurns - turn + 1;
+		long hash = board.getHash();
+		int hashMove = NO_MOVE;
+		if (table != null) {
+			long entry = table.probe(hash);
+			tableProbes++;
+			if (entry != 0) {
+				tableHits++;
+				hashMove = TranspositionTable.getMove(entry);
+				// the first turn has to find the move, not just the rating
+				if (turn > 1 && TranspositionTable.getDepth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.getScore(entry), turn);
+					int bound = TranspositionTable.getBound(entry);
+					if (bound == TranspositionTable.BOUND_EXACT
+							|| bound == TranspositionTable.BOUND_LOWER && score >= beta
+							|| bound == TranspositionTable.BOUND_UPPER && score <= alpha) {
+						return score;
+					}
+				}
+			}
+		}
+		int[] moves;
+		int moveCount;
+		if (turn == 1) {
+			moveCount = generateRootMoves(hashMove);
+			moves = rootMoves;
+		} else {
+			moves = moveBuffers[turn];
+			moveCount = MoveGenerator.generateMoves(board, moves, 0);
+			// on the last turn it's faster to just search the captures
+			ordering.sort(board, moves, moveCount, turn, hashMove, turn < maxTurns);
+		}
+		// can't move anything. But maybe still can capture?
+		if (moveCount == 0) {
+			if (turn == 1) {
+				rootMove = NO_MOVE;
+			}
+			board.doSkipMove();
+			int value = rateCaptures(turn, alpha, beta);
+			board.undo();
+			return value;
+		}
+		int alphaBefore = alpha;
+		int bestValue = -INFINITY;
+		int bestMoveHere = NO_MOVE;
+		for (int i = 0; i < moveCount; i++) {
+			int move = moves[i];
+			if (board.doMove(PackedMove.getStart(move), PackedMove.getTarget(move))) {
+				board.undo();
+				if (turn == 1) {
+					bestMove = move;
+					bestCaptures = null;
+					bestChain = -1;
+				}
+				return WIN - turn;
+			}
+			if (turn == 1) {
+				rootMove = move;
+			}
+			int value = rateCaptures(turn, alpha, beta);
+			board.undo();
+			if (stopped) {
+				return 0;
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				bestMoveHere = move;
+				if (value > alpha) {
+					alpha = value;
+					if (value >= beta) {
+						ordering.addCutoff(move, turn, depth);
+						cutoffs++;
+						if (i == 0) {
+							firstMoveCutoffs++;
+						}
+						break;
+					}
+				}
+			}
+		}
+		if (table != null) {
+			int bound = bestValue >= beta ? TranspositionTable.BOUND_LOWER
+					: bestValue > alphaBefore ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+			table.store(hash, depth, bound, toTable(bestValue, turn), bestMoveHere);
+		}
+		return bestValue;
+	}
+
+	/**
+	 * Moves one move to the front, keeping the order of the others.
+	 */
+	private static void moveToFront(int[] moves, int moveCount, int move) {
+		for (int i = 0; i < moveCount; i++) {
+			if (moves[i] == move) {
+				System.arraycopy(moves, 0, moves, 1, i);
+				moves[0] = move;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Wins are rated by the turn they happen in. The table stores them relative to
+	 * the board, so they can be used for the same board in any other turn.
+	 */
+	private static int toTable(int score, int turn) {
+		if (score > WIN_BOUND) {
+			return score + turn - 1;
+		} else if (score < -WIN_BOUND) {
+			return score - turn + 1;
+		}
+		return score;
+	}
+
+	private static int fromTable(int score, int turn) {
+		if (score > WIN_BOUND) {
+			return score - turn + 1;
+		} else if (score < -WIN_BOUND) {
+			return score + turn - 1;
+		}
+		return score;
+	}
+
+	// modifies the board, but reverts all changes before returning
+	private int rateCaptures(int turn, int alpha, int beta) {
+		CaptureChainGenerator chains = chainGenerators[turn];
+		int chainCount = chains.generate(board);
+		if (chainCount == 0) {
+			int value = proceed(turn, alpha, beta);
+			if (turn == 1 && value > alpha && !stopped) {
+				bestMove = rootMove;
+				bestCaptures = null;
+				bestChain = -1;
+			}
+			return value;
+		}
+		// the best captures of the previous search first
+		int firstChain = -1;
+		if (turn == 1 && rootMove == previousBestMove && previousBestChain < chainCount) {
+			firstChain = previousBestChain;
+		}
+		int bestValue = -INFINITY;
+		// test every distinct result of the possible capture paths
+		for (int i = 0; i < chainCount; i++) {
+			int chain = i == 0 && firstChain >= 0 ? firstChain : i <= firstChain ? i - 1 : i;
+			if (chains.isWinning(chain)) {
+				if (turn == 1) {
+					bestMove = rootMove;
+					bestCaptures = chains.toMoveCaptures(geometry, chain);
+					bestChain = chain;
+				}
+				return WIN - turn;
+			}
+			int undoDepth = board.getUndoDepth();
+			chains.apply(board, chain);
+			int value = proceed(turn, alpha, beta);
+			board.undoTo(undoDepth);
+			if (stopped) {
+				return 0;
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				if (value > alpha) {
+					alpha = value;
+					if (turn == 1) {
+						bestMove = rootMove;
+						bestCaptures = chains.toMoveCaptures(geometry, chain);
+						bestChain = chain;
+					}
+					if (value >= beta) {
+						break;
+					}
+				}
+			}
+		}
+		return bestValue;
+	}
+
+	/**
+	 * Rates the board after the turn is done, either directly or by searching the
+	 * turn of the next player.
+	 */
+	private int proceed(int turn, int alpha, int beta) {
+		if (turn >= maxTurns) {
+			if (tablebases != null && board.getBitBoard().countParticles() <= tablebases.getMaxParticles()) {
+				board.doNextPlayer();
+				int probe = tablebases.probe(board);
+				board.undo();
+				if (probe != TablebaseProber.NOT_FOUND) {
+					return rateProbe(turn, probe);
+				}
+			}
+			if (turn == maxTurns) {
+				quiescenceLeft = quiescenceBudget;
+			}
+			if (quiescenceLeft <= 0 || turn >= maxTurns + MAX_QUIESCENCE_TURNS) {
+				leaves++;
+				return evaluator.evaluate(board);
+			}
+		}
+		board.doNextPlayer();
+		// good value for next player is bad value for current player
+		int value = turn < maxTurns ? -rateTurn(turn + 1, -beta, -alpha) : -quiesce(turn + 1, -beta, -alpha);
+		board.undo();
+		return value;
+	}
+
+	/**
+	 * Rates the result of the next player in the tablebase from the view of the
+	 * current player. The distance counts from the turn of the next player, so
+	 * the game ends in turn + distance.
+	 */
+	private static int rateProbe(int turn, int probe) {
+		int end = turn + TablebaseProber.getDistance(probe);
+		switch (TablebaseProber.getValue(probe)) {
+		case Tablebase.WIN:
+			return -(WIN - end);
+		case Tablebase.LOSS:
+			return WIN - end;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Searches only the moves that win or allow captures after the last turn. The
+	 * player may also stop and take the rating of the board, as if he did any
+	 * other move.
+	 */
+	// modifies the board, but reverts all changes before returning
+	private int quiesce(int turn, int alpha, int beta) {
+		if ((++nodes & 15) == 0 && isInterrupted()) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+		quiescenceNodes++;
+		quiescenceLeft--;
+		int[] moves = moveBuffers[turn];
+		int moveCount = MoveGenerator.generateMoves(board, moves, 0);
+		for (int i = 0; i < moveCount; i++) {
+			if (PackedMove.hasFlag(moves[i], PackedMove.FLAG_WIN)) {
+				return WIN - turn;
+			}
+		}
+		leaves++;
+		int bestValue = evaluator.evaluate(board);
+		if (bestValue >= beta) {
+			return bestValue;
+		}
+		alpha = Math.max(alpha, bestValue);
+		beta = Math.min(beta, WIN - turn);
+		CaptureChainGenerator chains = chainGenerators[turn];
+		for (int i = 0; i < moveCount && alpha < beta; i++) {
+			int move = moves[i];
+			board.doMove(PackedMove.getStart(move), PackedMove.getTarget(move));
+			int chainCount = chains.generate(board);
+			for (int chain = 0; chain < chainCount; chain++) {
+				if (chains.isWinning(chain)) {
+					board.undo();
+					return WIN - turn;
+				}
+				int undoDepth = board.getUndoDepth();
+				chains.apply(board, chain);
+				int value = proceed(turn, alpha, beta);
+				board.undoTo(undoDepth);
+				if (stopped) {
+					break;
+				}
+				if (value > bestValue) {
+					bestValue = value;
+					if (value > alpha) {
+						alpha = value;
+						if (value >= beta) {
+							break;
+						}
+					}
+				}
+			}
+			board.undo();
+			if (stopped) {
+				return 0;
+			}
+		}
+		return bestValue;
+	}
+
+	/**
+	 * @param board
+	 *            the board to rate.
+	 * @return own particle count minus the particle count of all other players,
+	 *         from the view of the current player.
+	 */
+	static int evaluate(PhwarBoard board) {
+		int own = board.getBitBoard().countParticles(board.getCurrentPlayer());
+		return own * 2 - board.getBitBoard().countParticles();
+	}
+}
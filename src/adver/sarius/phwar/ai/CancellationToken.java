@@ -0,0 +1,28 @@
+package adver.sarius.phwar.ai;
+
+/**
+ * Lets another thread stop a computation of
+ * {@link PhwarAI#computeTurn(adver.sarius.phwar.model.PhwarBoard, CancellationToken, long, java.util.function.Consumer)
+ * computeTurn}, for example because the window got closed. The AI checks the
+ * token regularly while computing and returns as soon as possible after it got
+ * cancelled. A token can't be reset, so each computation should get a new one.
+ */
+public final class CancellationToken {
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Asks the computation to stop. Can be called by any thread, also before the
+	 * computation started or after it ended.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if {@link #cancel()} was called.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
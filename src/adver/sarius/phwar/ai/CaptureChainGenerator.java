@@ -0,0 +1,247 @@
+package adver.sarius.phwar.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Computes all distinct results of the captures the current player has to do
+ * after his move. Different orders of captures often end in the same board, so
+ * every resulting board is only reported once, with one capture sequence that
+ * leads there. Boards that were already reached in the middle of another
+ * sequence are not searched again. The captures are done on the given board and
+ * reverted before returning, without creating any objects once the buffers are
+ * big enough. Each search ply needs its own generator, since the results are
+ * stored in here.
+ */
+public class CaptureChainGenerator {
+
+	/** Maximum amount of captures possible on one board. */
+	private final int maxCaptures;
+	/** Generated captures of all sequence steps, used as a stack. */
+	private int[] stack;
+	/** The captures of the sequence that is currently tried. */
+	private int[] path;
+
+	/** Captures of all results, one sequence after the other. */
+	private int[] chainCaptures = new int[64];
+	/** Index of the first capture of each result in chainCaptures. */
+	private int[] chainOffsets = new int[16];
+	/** Amount of captures of each result. */
+	private int[] chainLengths = new int[16];
+	/** Hash of the resulting board of each result. */
+	private long[] chainHashes = new long[16];
+	/** True for each result that wins the game. */
+	private boolean[] chainWins = new boolean[16];
+	/** Amount of results of the last generation. */
+	private int chainCount;
+	/** Amount of used entries in chainCaptures. */
+	private int capturesSize;
+
+	/** Open addressing hash set of all reached boards, see seenStamps. */
+	private long[] seenHashes = new long[256];
+	/**
+	 * The generation each entry of seenHashes belongs to. Entries of older
+	 * generations count as empty, so the set never needs to be cleared.
+	 */
+	private int[] seenStamps = new int[256];
+	private int seenSize;
+	private int stamp;
+
+	/**
+	 * @param geometry
+	 *            the geometry of the boards to generate for.
+	 */
+	public CaptureChainGenerator(BoardGeometry geometry) {
+		this.maxCaptures = MoveGenerator.getMaxCaptures(geometry);
+		this.stack = new int[maxCaptures * 4];
+		this.path = new int[geometry.getCellCount()];
+	}
+
+	/**
+	 * Computes all distinct results of the captures the current player can do.
+	 * The board is modified during the computation, but restored again before
+	 * returning.
+	 * 
+	 * @param board
+	 *            the board to compute on.
+	 * @return amount of distinct results, or 0 if there is nothing to capture.
+	 */
+	public int generate(PhwarBoard board) {
+		chainCount = 0;
+		capturesSize = 0;
+		seenSize = 0;
+		if (++stamp == 0) { // overflow, start over
+			Arrays.fill(seenStamps, 0);
+			stamp = 1;
+		}
+		expand(board, 0, 0);
+		return chainCount;
+	}
+
+	private void expand(PhwarBoard board, int depth, int offset) {
+		if (stack.length < offset + maxCaptures) {
+			stack = Arrays.copyOf(stack, Math.max(stack.length * 2, offset + maxCaptures));
+		}
+		int end = MoveGenerator.generateCaptures(board, stack, offset);
+		if (end == offset) {
+			if (depth > 0) {
+				addChain(depth, board.getHash(), false);
+			}
+			return;
+		}
+		for (int i = offset; i < end; i++) {
+			int capture = stack[i];
+			path[depth] = capture;
+			boolean won = board.doCapture(PackedMove.getStart(capture), PackedMove.getTarget(capture));
+			long hash = board.getHash();
+			if (addSeen(hash)) {
+				if (won) {
+					addChain(depth + 1, hash, true);
+				} else {
+					expand(board, depth + 1, end);
+				}
+			}
+			board.undo();
+		}
+	}
+
+	private void addChain(int length, long hash, boolean won) {
+		if (chainCount == chainLengths.length) {
+			int capacity = chainCount * 2;
+			chainOffsets = Arrays.copyOf(chainOffsets, capacity);
+			chainLengths = Arrays.copyOf(chainLengths, capacity);
+			chainHashes = Arrays.copyOf(chainHashes, capacity);
+			chainWins = Arrays.copyOf(chainWins, capacity);
+		}
+		if (capturesSize + length > chainCaptures.length) {
+			chainCaptures = Arrays.copyOf(chainCaptures, Math.max(chainCaptures.length * 2, capturesSize + length));
+		}
+		System.arraycopy(path, 0, chainCaptures, capturesSize, length);
+		chainOffsets[chainCount] = capturesSize;
+		chainLengths[chainCount] = length;
+		chainHashes[chainCount] = hash;
+		chainWins[chainCount] = won;
+		capturesSize += length;
+		chainCount++;
+	}
+
+	/**
+	 * @return true if the hash was not reached before in this generation.
+	 */
+	private boolean addSeen(long hash) {
+		if (seenSize * 2 >= seenHashes.length) {
+			growSeen();
+		}
+		int mask = seenHashes.length - 1;
+		for (int i = (int) (hash ^ (hash >>> 32)) & mask;; i = (i + 1) & mask) {
+			if (seenStamps[i] != stamp) {
+				seenHashes[i] = hash;
+				seenStamps[i] = stamp;
+				seenSize++;
+				return true;
+			}
+			if (seenHashes[i] == hash) {
+				return false;
+			}
+		}
+	}
+
+	private void growSeen() {
+		long[] oldHashes = seenHashes;
+		int[] oldStamps = seenStamps;
+		seenHashes = new long[oldHashes.length * 2];
+		seenStamps = new int[oldHashes.length * 2];
+		seenSize = 0;
+		for (int i = 0; i < oldHashes.length; i++) {
+			if (oldStamps[i] == stamp) {
+				addSeen(oldHashes[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return amount of results of the last generation.
+	 */
+	public int getChainCount() {
+		return chainCount;
+	}
+
+	/**
+	 * @param chain
+	 *            index of the result.
+	 * @return amount of captures needed to get to that result.
+	 */
+	public int getChainLength(int chain) {
+		return chainLengths[chain];
+	}
+
+	/**
+	 * @param chain
+	 *            index of the result.
+	 * @param step
+	 *            index of the capture within the sequence.
+	 * @return the {@link PackedMove packed} capture.
+	 */
+	public int getCapture(int chain, int step) {
+		return chainCaptures[chainOffsets[chain] + step];
+	}
+
+	/**
+	 * @param chain
+	 *            index of the result.
+	 * @return hash of the board after doing the captures, see
+	 *         {@link PhwarBoard#getHash()}.
+	 */
+	public long getHash(int chain) {
+		return chainHashes[chain];
+	}
+
+	/**
+	 * @param chain
+	 *            index of the result.
+	 * @return true if the last capture wins the game.
+	 */
+	public boolean isWinning(int chain) {
+		return chainWins[chain];
+	}
+
+	/**
+	 * Does all captures of one result with {@link PhwarBoard#doCapture(int, int)
+	 * doCapture}, so they can be reverted with {@link PhwarBoard#undoTo(int)
+	 * undoTo}.
+	 * 
+	 * @param board
+	 *            the same board the results were generated for.
+	 * @param chain
+	 *            index of the result.
+	 * @return true if the game is won by this captures, otherwise false.
+	 */
+	public boolean apply(PhwarBoard board, int chain) {
+		boolean won = false;
+		for (int step = 0; step < chainLengths[chain]; step++) {
+			int capture = getCapture(chain, step);
+			won = board.doCapture(PackedMove.getStart(capture), PackedMove.getTarget(capture));
+		}
+		return won;
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board the results were generated for.
+	 * @param chain
+	 *            index of the result.
+	 * @return new list with the captures of that result, to be executed by
+	 *         {@link PhwarAI}.
+	 */
+	public List<MoveCapture> toMoveCaptures(BoardGeometry geometry, int chain) {
+		List<MoveCapture> captures = new ArrayList<>(chainLengths[chain]);
+		for (int step = 0; step < chainLengths[chain]; step++) {
+			captures.add(PackedMove.toMoveCapture(geometry, getCapture(chain, step)));
+		}
+		return captures;
+	}
+}
@@ -0,0 +1,33 @@
+package adver.sarius.phwar.ai;
+
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Rates a board after the last searched turn, when there is no win or loss in
+ * sight. It's called for almost every searched board, so it should only read
+ * what the board already keeps up to date with every move, capture and undo,
+ * instead of looking at every particle again. The
+ * {@link adver.sarius.phwar.model.BitBoard BitBoard} keeps the particle counts,
+ * neutron distances and free neighbours of each player, and its
+ * {@link adver.sarius.phwar.model.SightMap SightMap} the capturable particles.
+ * Reading only those takes the same time for every board.
+ */
+public interface Evaluator {
+
+	/**
+	 * Highest rating an evaluator may return. Far below the rating of a win, so
+	 * any win is better than any rating.
+	 */
+	int MAX_RATING = 100000;
+
+	/**
+	 * Rates the board for the current player.
+	 *
+	 * @param board
+	 *            the board to rate. Must not be modified.
+	 * @return the rating from the view of the current player, higher is better.
+	 *         Between -MAX_RATING and MAX_RATING, and the negation for the other
+	 *         player if there are only 2 players.
+	 */
+	int evaluate(PhwarBoard board);
+}
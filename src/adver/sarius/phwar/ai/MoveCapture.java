@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.BoardGeometry;
 import adver.sarius.phwar.model.Particle;
 import adver.sarius.phwar.model.PhwarBoard;
 
@@ -91,60 +93,19 @@ public class MoveCapture {
 	 * @return all the possible moves, or an empty set.
 	 */
 	public static Set<MoveCapture> getAllPossibleMoves(PhwarBoard board, int posX, int posY) {
-		// TODO: get from PhwarBoard?!
-		// see board.computeParticlesInLineOfSight()
 		Set<MoveCapture> moves = new HashSet<>();
-
-		int size = board.getSize();
-
-		for (int i = posX + 1; i <= size; i++) { // diagonal top right
-			if (PhwarBoard.getParticle(i, posY, board.getParticles()).isPresent() || !board.isInsideBoard(i, posY)
-					|| board.isCrossingCenter(posX, posY, i, posY)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, i, posY));
-			}
-		}
-		for (int i = posX - 1; i >= -size; i--) { // diagonal bottom left
-			if (PhwarBoard.getParticle(i, posY, board.getParticles()).isPresent() || !board.isInsideBoard(i, posY)
-					|| board.isCrossingCenter(posX, posY, i, posY)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, i, posY));
-			}
-		}
-		for (int i = posY + 1; i <= size; i++) { // top
-			if (PhwarBoard.getParticle(posX, i, board.getParticles()).isPresent() || !board.isInsideBoard(posX, i)
-					|| board.isCrossingCenter(posX, posY, posX, i)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, posX, i));
-			}
+		BoardGeometry geometry = board.getGeometry();
+		BitBoard bitBoard = board.getBitBoard();
+		int cell = geometry.getCell(posX, posY);
+		if (cell < 0) {
+			return moves;
 		}
-		for (int i = posY - 1; i >= -size; i--) { // bottom
-			if (PhwarBoard.getParticle(posX, i, board.getParticles()).isPresent() || !board.isInsideBoard(posX, i)
-					|| board.isCrossingCenter(posX, posY, posX, i)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, posX, i));
-			}
-		}
-		for (int i = 1; posX + i <= size && posY + i <= size; i++) { // bottom right
-			if (PhwarBoard.getParticle(posX + i, posY + i, board.getParticles()).isPresent()
-					|| !board.isInsideBoard(posX + i, posY + i)
-					|| board.isCrossingCenter(posX, posY, posX + i, posY + i)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, posX + i, posY + i));
-			}
-		}
-		for (int i = -1; posX + i >= -size && posY + i >= -size; i--) { // top left
-			if (PhwarBoard.getParticle(posX + i, posY + i, board.getParticles()).isPresent()
-					|| !board.isInsideBoard(posX + i, posY + i)
-					|| board.isCrossingCenter(posX, posY, posX + i, posY + i)) {
-				break;
-			} else {
-				moves.add(new MoveCapture(posX, posY, posX + i, posY + i));
+
+		for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+			int[] ray = geometry.getRay(cell, dir);
+			int range = geometry.getMoveRange(cell, dir);
+			for (int i = 0; i < range && !bitBoard.isOccupied(ray[i]); i++) {
+				moves.add(new MoveCapture(posX, posY, geometry.getPosX(ray[i]), geometry.getPosY(ray[i])));
 			}
 		}
 		return moves;
@@ -153,7 +114,8 @@ public class MoveCapture {
 	/**
 	 * Computes all possible orders of captures the given particle can do, and all
 	 * orders of new captures possible by doing a capture. Does not check any rules
-	 * or board conditions when executing the captures!
+	 * or board conditions when executing the captures! The captures are done on
+	 * the given board and reverted again before returning.
 	 * 
 	 * @param board
 	 *            the board to compute on.
@@ -164,12 +126,13 @@ public class MoveCapture {
 	public static Set<List<MoveCapture>> getAllPossibleCaptureCombinations(PhwarBoard board, Particle capturer,
 			Set<Particle> toCapture) {
 		Set<List<MoveCapture>> ret = new HashSet<>();
+		BoardGeometry geometry = board.getGeometry();
+		int capturerCell = geometry.getCell(capturer.getPosX(), capturer.getPosY());
 		toCapture.forEach(p -> {
-			PhwarBoard copy = new PhwarBoard(board);
 			MoveCapture cMove = new MoveCapture(capturer.getPosX(), capturer.getPosY(), p.getPosX(), p.getPosY());
-			boolean won = copy.captureUnchecked(capturer.getPosX(), capturer.getPosY(), p.getPosX(), p.getPosY());
+			boolean won = board.doCapture(capturerCell, geometry.getCell(p.getPosX(), p.getPosY()));
 
-			Map<Particle, Set<Particle>> canCapture = copy.computeParticlesThatCanCapture();
+			Map<Particle, Set<Particle>> canCapture = board.computeParticlesThatCanCapture();
 
 			if (won || canCapture.isEmpty()) { // end of recursion
 				List<MoveCapture> captures = new ArrayList<>();
@@ -177,17 +140,36 @@ public class MoveCapture {
 				ret.add(captures);
 			} else {
 				canCapture.forEach((cap, toCap) -> {
-					getAllPossibleCaptureCombinations(copy, cap, toCap).forEach(s -> {
+					getAllPossibleCaptureCombinations(board, cap, toCap).forEach(s -> {
 						s.add(0, cMove);
 						ret.add(s);
 					});
 					;
 				});
 			}
+			board.undo();
 		});
 		return ret;
 	}
 
+	/**
+	 * @param text
+	 *            text created by {@link #toString()}, like "1/-2>3/-2".
+	 * @return the move or capture of that text.
+	 * @throws IllegalArgumentException
+	 *             if the format is wrong.
+	 */
+	public static MoveCapture parse(String text) {
+		String[] cells = text.split(">");
+		String[] start = cells[0].split("/");
+		String[] target = cells.length == 2 ? cells[1].split("/") : new String[0];
+		if (start.length != 2 || target.length != 2) {
+			throw new IllegalArgumentException("Expected a move like 1/-2>3/-2, but got " + text);
+		}
+		return new MoveCapture(Integer.parseInt(start[0]), Integer.parseInt(start[1]), Integer.parseInt(target[0]),
+				Integer.parseInt(target[1]));
+	}
+
 	@Override
 	public String toString() {
 		return startX + "/" + startY + ">" + targetX + "/" + targetY;
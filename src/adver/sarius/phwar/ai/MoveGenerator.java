@@ -0,0 +1,150 @@
+package adver.sarius.phwar.ai;
+
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+import adver.sarius.phwar.model.SightMap;
+
+/**
+ * Computes all moves of the current player as {@link PackedMove packed} ints
+ * into a buffer of the caller. Does not create any objects, so the buffers can
+ * be reused for every node of a search.
+ */
+public final class MoveGenerator {
+
+	private MoveGenerator() {
+	}
+
+	/**
+	 * Returns a buffer size that is big enough for all moves of one player on a
+	 * board with the given geometry.
+	 * 
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @return maximum amount of moves one call can generate.
+	 */
+	public static int getMaxMoves(BoardGeometry geometry) {
+		return geometry.getCellCount() * BoardGeometry.DIRECTIONS * 2 * geometry.getSize();
+	}
+
+	/**
+	 * Writes all possible moves of the current player into the buffer. The
+	 * current state of the turn doesn't matter.
+	 * 
+	 * @param board
+	 *            the board to compute on.
+	 * @param buffer
+	 *            the buffer to write the moves into.
+	 * @param offset
+	 *            index of the buffer to write the first move to.
+	 * @return index after the last written move. Same as offset if the player
+	 *         can't move anything.
+	 */
+	public static int generateMoves(PhwarBoard board, int[] buffer, int offset) {
+		BoardGeometry geometry = board.getGeometry();
+		BitBoard bitBoard = board.getBitBoard();
+		int player = board.getCurrentPlayer();
+		int center = geometry.getCenterCell();
+		int end = offset;
+		for (int cell = bitBoard.nextOccupied(player, 0); cell >= 0; cell = bitBoard.nextOccupied(player, cell + 1)) {
+			boolean neutron = bitBoard.getParticle(cell).getCharge() == 0;
+			for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+				int[] ray = geometry.getRay(cell, dir);
+				int range = geometry.getMoveRange(cell, dir);
+				for (int i = 0; i < range && !bitBoard.isOccupied(ray[i]); i++) {
+					buffer[end++] = PackedMove.of(cell, ray[i], neutron && ray[i] == center ? PackedMove.FLAG_WIN : 0);
+				}
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Checks without creating any objects, if the current player can move any of
+	 * his particles.
+	 * 
+	 * @param board
+	 *            the board to check.
+	 * @return true if at least one particle of the current player can move.
+	 */
+	public static boolean hasAnyMove(PhwarBoard board) {
+		BoardGeometry geometry = board.getGeometry();
+		BitBoard bitBoard = board.getBitBoard();
+		int player = board.getCurrentPlayer();
+		for (int cell = bitBoard.nextOccupied(player, 0); cell >= 0; cell = bitBoard.nextOccupied(player, cell + 1)) {
+			for (int neighbour : geometry.getNeighbours(cell)) {
+				if (!bitBoard.isOccupied(neighbour)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a buffer size that is big enough for all captures of one player on
+	 * a board with the given geometry.
+	 * 
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @return maximum amount of captures one call can generate.
+	 */
+	public static int getMaxCaptures(BoardGeometry geometry) {
+		return geometry.getCellCount() * BoardGeometry.DIRECTIONS;
+	}
+
+	/**
+	 * Writes all captures the current player could do right now into the buffer,
+	 * encoded as {@link PackedMove packed} ints from the capturer to the captured
+	 * particle. See {@link PhwarBoard#computeParticlesThatCanCapture()}.
+	 * 
+	 * @param board
+	 *            the board to compute on.
+	 * @param buffer
+	 *            the buffer to write the captures into.
+	 * @param offset
+	 *            index of the buffer to write the first capture to.
+	 * @return index after the last written capture. Same as offset if the player
+	 *         can't capture anything.
+	 */
+	public static int generateCaptures(PhwarBoard board, int[] buffer, int offset) {
+		BitBoard bitBoard = board.getBitBoard();
+		SightMap sight = bitBoard.getSightMap();
+		int player = board.getCurrentPlayer();
+		int end = offset;
+		for (int cell = bitBoard.nextOccupied(player, 0); cell >= 0; cell = bitBoard.nextOccupied(player, cell + 1)) {
+			for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+				int enemy = sight.getSeen(cell, dir);
+				if (enemy >= 0 && bitBoard.getParticle(enemy).getPlayer() != player
+						&& sight.isCapturable(enemy, player)) {
+					buffer[end++] = PackedMove.of(cell, enemy, 0);
+				}
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Checks without creating any objects, if the current player can capture
+	 * anything right now.
+	 * 
+	 * @param board
+	 *            the board to check.
+	 * @return true if at least one enemy particle can be captured.
+	 */
+	public static boolean hasAnyCapture(PhwarBoard board) {
+		BitBoard bitBoard = board.getBitBoard();
+		SightMap sight = bitBoard.getSightMap();
+		int player = board.getCurrentPlayer();
+		for (int cell = bitBoard.nextOccupied(player, 0); cell >= 0; cell = bitBoard.nextOccupied(player, cell + 1)) {
+			for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+				int enemy = sight.getSeen(cell, dir);
+				if (enemy >= 0 && bitBoard.getParticle(enemy).getPlayer() != player
+						&& sight.isCapturable(enemy, player)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
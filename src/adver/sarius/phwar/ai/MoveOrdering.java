@@ -0,0 +1,169 @@
+package adver.sarius.phwar.ai;
+
+import java.util.Arrays;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Sorts the moves of a turn, so the alpha-beta search tries the good ones
+ * first and can skip more of the others. The order is:
+ * <ol>
+ * <li>moves that win the game right away,</li>
+ * <li>the best move known from the {@link TranspositionTable},</li>
+ * <li>moves after which the player can capture something,</li>
+ * <li>the 2 killer moves of the turn, which were good enough to skip the other
+ * moves of another board in the same turn,</li>
+ * <li>all others, by the history of how often the same start and target cell
+ * were good enough to skip the other moves anywhere in the search.</li>
+ * </ol>
+ * Moves with the same rank keep the order of the {@link MoveGenerator}. Not
+ * thread safe, each search needs its own instance.
+ */
+final class MoveOrdering {
+
+	private static final int SCORE_WIN = 1 << 30;
+	private static final int SCORE_HASH_MOVE = 1 << 29;
+	private static final int SCORE_CAPTURE = 1 << 28;
+	private static final int SCORE_KILLER = 1 << 27;
+	/** History values are halved when one gets above this. */
+	private static final int MAX_HISTORY = 1 << 20;
+	private static final int KILLERS = 2;
+
+	/** Killer moves without flags, indexed by turn. */
+	private int[][] killers = new int[0][];
+	/** How good each move was, indexed by start cell * cell count + target cell. */
+	private int[] history = new int[0];
+	private int cellCount;
+	/** Ratings of the moves that get sorted right now. */
+	private int[] scores = new int[0];
+
+	/**
+	 * Makes sure there is room for the given geometry and amount of turns. Keeps
+	 * the collected killers and history if nothing changed.
+	 *
+	 * @param geometry
+	 *            the geometry of the boards to search.
+	 * @param maxTurns
+	 *            the last turn to search.
+	 */
+	void ensureCapacity(BoardGeometry geometry, int maxTurns) {
+		if (geometry.getCellCount() != cellCount) {
+			cellCount = geometry.getCellCount();
+			history = new int[cellCount * cellCount];
+			scores = new int[MoveGenerator.getMaxMoves(geometry)];
+			killers = new int[0][];
+		}
+		if (killers.length <= maxTurns) {
+			int oldLength = killers.length;
+			killers = Arrays.copyOf(killers, maxTurns + 1);
+			for (int turn = oldLength; turn <= maxTurns; turn++) {
+				killers[turn] = new int[KILLERS];
+				Arrays.fill(killers[turn], AlphaBetaSearch.NO_MOVE);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the killers and weakens the history, since they are less useful
+	 * for a different board.
+	 */
+	void newPosition() {
+		for (int[] killer : killers) {
+			Arrays.fill(killer, AlphaBetaSearch.NO_MOVE);
+		}
+		for (int i = 0; i < history.length; i++) {
+			history[i] >>= 2;
+		}
+	}
+
+	/**
+	 * Sorts the moves.
+	 *
+	 * @param board
+	 *            the board the moves were generated for. Is modified to check
+	 *            for captures, but restored again before returning.
+	 * @param moves
+	 *            the moves to sort.
+	 * @param moveCount
+	 *            amount of moves in the buffer.
+	 * @param turn
+	 *            the turn of the moves, to find the killers.
+	 * @param hashMove
+	 *            the best move known from the table, or NO_MOVE.
+	 * @param checkCaptures
+	 *            false to not look for moves that allow captures, which takes
+	 *            about as long as searching the last turn.
+	 */
+	void sort(PhwarBoard board, int[] moves, int moveCount, int turn, int hashMove, boolean checkCaptures) {
+		int[] killer = killers[turn];
+		for (int i = 0; i < moveCount; i++) {
+			int move = moves[i];
+			int plain = PackedMove.withoutFlags(move);
+			int start = PackedMove.getStart(move);
+			int target = PackedMove.getTarget(move);
+			int score;
+			if (PackedMove.hasFlag(move, PackedMove.FLAG_WIN)) {
+				score = SCORE_WIN;
+			} else if (move == hashMove) {
+				score = SCORE_HASH_MOVE;
+			} else {
+				score = history[start * cellCount + target];
+				if (checkCaptures && allowsCapture(board, start, target)) {
+					score += SCORE_CAPTURE;
+				} else if (plain == killer[0]) {
+					score += SCORE_KILLER + SCORE_KILLER / 2;
+				} else if (plain == killer[1]) {
+					score += SCORE_KILLER;
+				}
+			}
+			scores[i] = score;
+		}
+		// insertion sort, there are only a few moves and it keeps the order of equal ones
+		for (int i = 1; i < moveCount; i++) {
+			int move = moves[i];
+			int score = scores[i];
+			int j = i - 1;
+			for (; j >= 0 && scores[j] < score; j--) {
+				moves[j + 1] = moves[j];
+				scores[j + 1] = scores[j];
+			}
+			moves[j + 1] = move;
+			scores[j + 1] = score;
+		}
+	}
+
+	private static boolean allowsCapture(PhwarBoard board, int start, int target) {
+		board.doMove(start, target);
+		boolean capture = MoveGenerator.hasAnyCapture(board);
+		board.undo();
+		return capture;
+	}
+
+	/**
+	 * Remembers a move that was good enough to skip the other moves.
+	 *
+	 * @param move
+	 *            the move.
+	 * @param turn
+	 *            the turn of the move.
+	 * @param depth
+	 *            amount of turns that got searched after the move, including its
+	 *            own one. Moves higher up in the search count more.
+	 */
+	void addCutoff(int move, int turn, int depth) {
+		int plain = PackedMove.withoutFlags(move);
+		int[] killer = killers[turn];
+		if (killer[0] != plain) {
+			killer[1] = killer[0];
+			killer[0] = plain;
+		}
+		int index = PackedMove.getStart(move) * cellCount + PackedMove.getTarget(move);
+		history[index] += depth * depth;
+		if (history[index] > MAX_HISTORY) {
+			for (int i = 0; i < history.length; i++) {
+				history[i] >>= 1;
+			}
+		}
+	}
+}
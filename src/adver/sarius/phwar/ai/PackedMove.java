@@ -0,0 +1,124 @@
+package adver.sarius.phwar.ai;
+
+import adver.sarius.phwar.model.BoardGeometry;
+
+/**
+ * Encodes a move or capture into one int, to avoid creating objects while
+ * searching. The lowest 12 bits are the start cell, the next 12 bits the
+ * target cell, and the highest 8 bits are flags. Use
+ * {@link #toMoveCapture(BoardGeometry, int) toMoveCapture} to get a
+ * {@link MoveCapture} that can be executed on the board.
+ */
+public final class PackedMove {
+
+	/** Marks a move of a neutron onto the center, which wins the game. */
+	public static final int FLAG_WIN = 1 << 24;
+
+	private static final int CELL_BITS = 12;
+	private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+	private static final int FLAG_SHIFT = 2 * CELL_BITS;
+
+	private PackedMove() {
+	}
+
+	/**
+	 * @param startCell
+	 *            index of the start cell.
+	 * @param targetCell
+	 *            index of the target cell.
+	 * @param flags
+	 *            the flags of the move, or 0.
+	 * @return the encoded move.
+	 */
+	public static int of(int startCell, int targetCell, int flags) {
+		return startCell | (targetCell << CELL_BITS) | flags;
+	}
+
+	/**
+	 * @param move
+	 *            the encoded move.
+	 * @return index of the start cell.
+	 */
+	public static int getStart(int move) {
+		return move & CELL_MASK;
+	}
+
+	/**
+	 * @param move
+	 *            the encoded move.
+	 * @return index of the target cell.
+	 */
+	public static int getTarget(int move) {
+		return (move >>> CELL_BITS) & CELL_MASK;
+	}
+
+	/**
+	 * @param move
+	 *            the encoded move.
+	 * @return the flags of the move.
+	 */
+	public static int getFlags(int move) {
+		return move & (-1 << FLAG_SHIFT);
+	}
+
+	/**
+	 * @param move
+	 *            the encoded move.
+	 * @param flag
+	 *            the flag to check.
+	 * @return true if the flag is set.
+	 */
+	public static boolean hasFlag(int move, int flag) {
+		return (move & flag) != 0;
+	}
+
+	/**
+	 * @param move
+	 *            the encoded move.
+	 * @return the move without any flags, to compare moves.
+	 */
+	public static int withoutFlags(int move) {
+		return move & ~(-1 << FLAG_SHIFT);
+	}
+
+	/**
+	 * Decodes the move, so it can be used by the GUI or executed with the checked
+	 * board methods.
+	 * 
+	 * @param geometry
+	 *            the geometry of the board the move was made for.
+	 * @param move
+	 *            the encoded move.
+	 * @return new move object with the coordinates of the cells.
+	 */
+	public static MoveCapture toMoveCapture(BoardGeometry geometry, int move) {
+		int start = getStart(move);
+		int target = getTarget(move);
+		return new MoveCapture(geometry.getPosX(start), geometry.getPosY(start), geometry.getPosX(target),
+				geometry.getPosY(target));
+	}
+
+	/**
+	 * Encodes the move without any flags.
+	 * 
+	 * @param geometry
+	 *            the geometry of the board the move is made for.
+	 * @param move
+	 *            the move to encode.
+	 * @return the encoded move.
+	 */
+	public static int fromMoveCapture(BoardGeometry geometry, MoveCapture move) {
+		return of(geometry.getCell(move.startX, move.startY), geometry.getCell(move.targetX, move.targetY), 0);
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board the move was made for.
+	 * @param move
+	 *            the encoded move.
+	 * @return same format as {@link MoveCapture#toString()}.
+	 */
+	public static String toString(BoardGeometry geometry, int move) {
+		return toMoveCapture(geometry, move).toString();
+	}
+}
@@ -5,8 +5,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
-import adver.sarius.phwar.model.Particle;
+import adver.sarius.phwar.model.BoardGeometry;
 import adver.sarius.phwar.model.PhwarBoard;
 
 public abstract class PhwarAI {
@@ -27,6 +28,58 @@ public abstract class PhwarAI {
 	 */
 	abstract public void computeTurn(PhwarBoard board);
 
+	/**
+	 * Same as {@link #computeTurn(PhwarBoard)}, but can be stopped by another
+	 * thread and reports the best turn found so far. By default the computation
+	 * can only be skipped if the token is cancelled before it starts, the
+	 * deadline is ignored, and the progress is only reported once at the end.
+	 * AIs that take long should stop within a few milliseconds instead.
+	 * 
+	 * @param board
+	 *            current board to compute the turn for. Will not be modified.
+	 * @param token
+	 *            stops the computation as soon as possible once cancelled.
+	 * @param deadline
+	 *            time of {@link System#nanoTime()} to stop at and keep the best
+	 *            turn found so far, or {@link Long#MAX_VALUE} to only use the
+	 *            limits of the AI.
+	 * @param progress
+	 *            gets the best turn whenever a better one is found, or null. Is
+	 *            called by the computing thread.
+	 * @return true if the turn got computed and can be executed, false if the
+	 *         token got cancelled.
+	 */
+	public boolean computeTurn(PhwarBoard board, CancellationToken token, long deadline,
+			Consumer<SearchProgress> progress) {
+		if (token.isCancelled()) {
+			return false;
+		}
+		computeTurn(board);
+		if (progress != null) {
+			progress.accept(new SearchProgress(move, captures, 0));
+		}
+		return !token.isCancelled();
+	}
+
+	/**
+	 * Lets the AI use the time while the other player is doing his turn. The AI
+	 * should stop pondering on its own when computeTurn gets called. Does nothing
+	 * by default.
+	 * 
+	 * @param board
+	 *            the board at the start of the turn of the other player. Will not
+	 *            be modified, and can be used by the caller right away.
+	 */
+	public void ponder(PhwarBoard board) {
+	}
+
+	/**
+	 * Stops the pondering in progress, for example because the game is over.
+	 * Does nothing by default.
+	 */
+	public void stopPondering() {
+	}
+
 	/**
 	 * Execute all the computed moves and captures at once.
 	 * 
@@ -117,4 +170,25 @@ public abstract class PhwarAI {
 		}
 		return false;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Same as {@link #captureAllUnchecked(PhwarBoard, List) captureAllUnchecked},
+	 * but records the changes so they can be reverted with
+	 * {@link PhwarBoard#undoTo(int)}.
+	 * 
+	 * @param board
+	 *            the board to execute the captures for.
+	 * @param captures
+	 *            list of all captures to be executed. Empty list to do nothing.
+	 * @return true if the game is won by this captures, otherwise false.
+	 */
+	public static boolean doCaptureAll(PhwarBoard board, List<MoveCapture> captures) {
+		BoardGeometry geometry = board.getGeometry();
+		for (MoveCapture cap : captures) {
+			if (board.doCapture(geometry.getCell(cap.startX, cap.startY), geometry.getCell(cap.targetX, cap.targetY))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
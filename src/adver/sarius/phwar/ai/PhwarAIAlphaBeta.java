@@ -0,0 +1,510 @@
+package adver.sarius.phwar.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import adver.sarius.phwar.ai.data.OpeningBook;
+import adver.sarius.phwar.ai.data.TablebaseProber;
+import adver.sarius.phwar.ai.data.TurnResult;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Rates the turns the same way as {@link PhwarAISinglePath}, but skips all
+ * turns that can't change the result with alpha-beta pruning. With the same
+ * amount of turns it picks a move with the same rating, just a lot faster. So
+ * it can look some more turns ahead in the same time.
+ * <p>
+ * Unlike {@link PhwarAISinglePath}, by default it doesn't rate a board after
+ * the last turn while the next player can still win or capture something, but
+ * follows those moves a few turns further. See
+ * {@link #setQuiescenceBudget(int)}. And it rates the boards by more than just
+ * the particle count, see {@link #setEvaluator(Evaluator)}.
+ * <p>
+ * With a time budget it searches 1 turn ahead, then 2 turns, and so on, until
+ * the time is up or the maximum amount of turns is reached. The move of the
+ * last complete search is used, and each search tries the best move of the
+ * previous one first. All searches share one {@link TranspositionTable}, which
+ * is kept for the following turns.
+ * <p>
+ * With more than 1 thread, helper threads search the same board at the same
+ * time, half of them 1 turn deeper than the others. They only fill the shared
+ * table, which lets the main search skip more turns. The move is always taken
+ * from the main search, so it doesn't depend on which thread finished first.
+ * <p>
+ * While the other player is thinking, it can {@link #ponder(PhwarBoard)
+ * ponder}: it guesses the turn of the other player with a short search, and
+ * already searches its own next turn after that. If the guess was right, the
+ * search just goes on when it is really its turn. Otherwise it is aborted, and
+ * only the filled table is left.
+ * <p>
+ * With an {@link #setOpeningBook(OpeningBook) opening book}, the turns of the
+ * first boards of a game are looked up instead of searched. With
+ * {@link #setTablebases(TablebaseProber) tablebases}, so are the results of the
+ * boards with only a few particles left.
+ */
+public class PhwarAIAlphaBeta extends PhwarAI {
+	/** Default size of the transposition table in megabytes. */
+	public static final int DEFAULT_TABLE_SIZE = 64;
+	/** Default amount of turns searched after each board of the last turn. */
+	public static final int DEFAULT_QUIESCENCE_BUDGET = 8;
+
+	private int maxTurns;
+	private long timeBudget;
+	private double time;
+	private int counts;
+	private final AlphaBetaSearch search = new AlphaBetaSearch();
+	private final TranspositionTable table;
+	/** Searches of the helper threads. */
+	private final AlphaBetaSearch[] helpers;
+	/** Runs the helper searches, or null with only 1 thread. */
+	private ExecutorService executor;
+	/**
+	 * Time of {@link System#nanoTime()} to stop the current search at, or
+	 * {@link Long#MAX_VALUE} for no limit. Might be set by another thread while
+	 * pondering.
+	 */
+	private volatile long deadline;
+	/** Gets the result of every completed iteration, or null. */
+	private volatile Consumer<SearchProgress> progress;
+
+	/** Runs the pondering, created on first use. */
+	private ExecutorService ponderExecutor;
+	/**
+	 * The pondering in progress, or null. Read by the thread that computes the
+	 * turn and the one that ponders, but only changed while holding the lock of
+	 * this AI.
+	 */
+	private volatile Future<?> pondering;
+	/**
+	 * Hash of the board the pondering searches, or 0 while it still guesses the
+	 * turn of the other player.
+	 */
+	private volatile long ponderHash;
+
+	/** Best move of the last complete iteration, or NO_MOVE. */
+	private int bestMove;
+	/** Captures after the best move of the last complete iteration. */
+	private List<MoveCapture> bestCaptures;
+	/** Amount of turns of the last complete iteration. */
+	private volatile int bestDepth;
+	/** Counters of all threads for the current or last turn. */
+	private final SearchStats stats = new SearchStats();
+	/** Turns to use without searching, or null. */
+	private OpeningBook book;
+
+	/**
+	 * Always searches all turns, no matter how long it takes.
+	 * 
+	 * @param maxTurns
+	 *            amount of turns to look ahead, including the own one.
+	 */
+	public PhwarAIAlphaBeta(int maxTurns) {
+		this(maxTurns, 0);
+	}
+
+	/**
+	 * @param maxTurns
+	 *            maximum amount of turns to look ahead, including the own one.
+	 * @param timeBudget
+	 *            milliseconds to search for each turn, or 0 for no limit. At
+	 *            least 1 turn is always searched completely.
+	 */
+	public PhwarAIAlphaBeta(int maxTurns, long timeBudget) {
+		this(maxTurns, timeBudget, DEFAULT_TABLE_SIZE);
+	}
+
+	/**
+	 * @param maxTurns
+	 *            maximum amount of turns to look ahead, including the own one.
+	 * @param timeBudget
+	 *            milliseconds to search for each turn, or 0 for no limit. At
+	 *            least 1 turn is always searched completely.
+	 * @param tableSize
+	 *            size of the transposition table in megabytes, or 0 to not use
+	 *            any.
+	 */
+	public PhwarAIAlphaBeta(int maxTurns, long timeBudget, int tableSize) {
+		this(maxTurns, timeBudget, tableSize, 1);
+	}
+
+	/**
+	 * @param maxTurns
+	 *            maximum amount of turns to look ahead, including the own one.
+	 * @param timeBudget
+	 *            milliseconds to search for each turn, or 0 for no limit. At
+	 *            least 1 turn is always searched completely.
+	 * @param tableSize
+	 *            size of the transposition table in megabytes. Should not be 0
+	 *            with more than 1 thread, since the threads only help each other
+	 *            through the table.
+	 * @param threads
+	 *            amount of threads to search with, including the calling one.
+	 */
+	public PhwarAIAlphaBeta(int maxTurns, long timeBudget, int tableSize, int threads) {
+		this.maxTurns = maxTurns;
+		this.timeBudget = timeBudget;
+		this.table = tableSize > 0 ? new TranspositionTable(tableSize) : null;
+		search.setTable(table);
+		search.setStats(stats);
+		this.helpers = new AlphaBetaSearch[Math.max(0, threads - 1)];
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i] = new AlphaBetaSearch();
+			helpers[i].setTable(table);
+			helpers[i].setStats(stats);
+		}
+		setQuiescenceBudget(DEFAULT_QUIESCENCE_BUDGET);
+		setEvaluator(new WeightedEvaluator());
+	}
+
+	/**
+	 * Sets how to rate the boards after the last turn. Should not be called
+	 * while pondering.
+	 *
+	 * @param evaluator
+	 *            the rating to use. By default a {@link WeightedEvaluator} with
+	 *            the default weights. Must be thread safe with more than 1
+	 *            thread.
+	 */
+	public void setEvaluator(Evaluator evaluator) {
+		search.setEvaluator(evaluator);
+		for (AlphaBetaSearch helper : helpers) {
+			helper.setEvaluator(evaluator);
+		}
+	}
+
+	/**
+	 * Sets how far to follow the moves that win or allow captures after the last
+	 * turn, before the board gets rated. Should not be called while pondering.
+	 *
+	 * @param quiescenceBudget
+	 *            amount of turns that may be searched after each board of the
+	 *            last turn, or 0 to always rate the board right away like
+	 *            {@link PhwarAISinglePath}.
+	 */
+	public void setQuiescenceBudget(int quiescenceBudget) {
+		search.setQuiescenceBudget(quiescenceBudget);
+		for (AlphaBetaSearch helper : helpers) {
+			helper.setQuiescenceBudget(quiescenceBudget);
+		}
+	}
+
+	/**
+	 * Sets the tablebases to look up the boards after the last turn in, once
+	 * there are few enough particles left. Should not be called while
+	 * pondering.
+	 *
+	 * @param tablebases
+	 *            the tablebases, or null to rate all boards.
+	 */
+	public void setTablebases(TablebaseProber tablebases) {
+		search.setTablebases(tablebases);
+		for (AlphaBetaSearch helper : helpers) {
+			helper.setTablebases(tablebases);
+		}
+	}
+
+	/**
+	 * Sets the book to look up the turns in before searching. Boards that are
+	 * not in the book are searched as usual.
+	 *
+	 * @param book
+	 *            the book, or null to always search.
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+
+	@Override
+	public void computeTurn(PhwarBoard board) {
+		computeTurn(board, new CancellationToken(), Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Searches until the time budget or the given deadline is used up, whichever
+	 * comes first, and reports the best turn after every completed iteration.
+	 * Stops within a millisecond once the token is cancelled. If at least 1
+	 * iteration was completed before that, its turn is still set.
+	 */
+	@Override
+	public boolean computeTurn(PhwarBoard board, CancellationToken token, long deadline,
+			Consumer<SearchProgress> progress) {
+		long start = System.currentTimeMillis();
+		this.captureIndex = 0;
+		TurnResult bookTurn = book == null ? null : book.probe(board);
+		if (bookTurn != null) {
+			stopPondering();
+			this.move = bookTurn.move;
+			this.captures = bookTurn.captures;
+			System.out.println("(" + board.getCurrentPlayer() + ") Book turn: " + move
+					+ (captures == null ? "" : " " + captures));
+			return !token.isCancelled();
+		}
+		this.progress = progress;
+		if (timeBudget > 0) {
+			deadline = Math.min(deadline, System.nanoTime() + timeBudget * 1000000);
+		}
+
+		Future<?> current = pondering;
+		boolean ponderHit = current != null && ponderHash == board.getHash();
+		if (ponderHit) {
+			// guessed right, let the pondering go on for the normal time
+			search.setToken(token);
+			this.deadline = deadline;
+			if (bestDepth > 0) {
+				search.setDeadline(deadline);
+			}
+			waitForPondering(current);
+		} else {
+			stopPondering();
+			search.setToken(token);
+			this.deadline = deadline;
+			if (table != null) {
+				table.newSearch();
+			}
+			deepen(board.copy());
+		}
+		search.setToken(null);
+		this.progress = null;
+		this.move = bestMove == AlphaBetaSearch.NO_MOVE ? null
+				: PackedMove.toMoveCapture(board.getGeometry(), bestMove);
+		this.captures = bestCaptures;
+
+		long diff = System.currentTimeMillis() - start;
+		time += diff;
+		counts++;
+		System.out.println("(" + board.getCurrentPlayer() + ") Time needed: " + diff + " Average: " + (time / counts)
+				+ ". " + stats + (ponderHit ? ". Ponder hit." : "") + (token.isCancelled() ? ". Cancelled." : ""));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * @return the counters of the current or last turn, of all threads
+	 *         together. Can be read at any time, or published over JMX.
+	 */
+	public SearchStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Searches 1 turn ahead, then 2 turns, and so on until the deadline, and
+	 * keeps the result of the last complete iteration.
+	 *
+	 * @param copy
+	 *            the board to search on, will be modified.
+	 */
+	private void deepen(PhwarBoard copy) {
+		bestMove = AlphaBetaSearch.NO_MOVE;
+		bestCaptures = null;
+		bestDepth = 0;
+		stats.reset();
+		List<Future<?>> helperResults = startHelpers(copy);
+		boolean limited = timeBudget > 0 || deadline != Long.MAX_VALUE;
+		for (int turns = limited ? 1 : maxTurns; turns <= maxTurns; turns++) {
+			search.setDeadline(turns == 1 ? Long.MAX_VALUE : deadline);
+			long iterationStart = System.nanoTime();
+			int value = search.search(copy, turns);
+			if (search.isStopped()) {
+				break;
+			}
+			stats.addIteration(new SearchStats.Iteration(turns, search.getNodes(), System.nanoTime() - iterationStart));
+			bestMove = search.getBestMove();
+			bestCaptures = search.getBestCaptures();
+			bestDepth = turns;
+			Consumer<SearchProgress> progress = this.progress;
+			if (progress != null) {
+				progress.accept(new SearchProgress(
+						bestMove == AlphaBetaSearch.NO_MOVE ? null
+								: PackedMove.toMoveCapture(copy.getGeometry(), bestMove),
+						bestCaptures, turns));
+			}
+			if (Math.abs(value) >= AlphaBetaSearch.WIN - turns) {
+				// searching deeper can't find a faster win or a slower loss
+				break;
+			}
+			if (AlphaBetaSearch.isPast(deadline)) {
+				break;
+			}
+		}
+		stopHelpers(helperResults);
+	}
+
+	/**
+	 * Starts to search the next own turn in another thread, while the other
+	 * player does his turn. The turn of the other player is guessed by a search
+	 * of 2 turns. Stops any other pondering first. Uses as many threads as a
+	 * normal search, so it should only be called while the cores are idle, for
+	 * example while a human is thinking, and not during the search of another
+	 * AI.
+	 *
+	 * @param board
+	 *            the board at the start of the turn of the other player. Will
+	 *            not be modified.
+	 */
+	@Override
+	public void ponder(PhwarBoard board) {
+		stopPondering();
+		if (ponderExecutor == null) {
+			ponderExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "PhwarAIAlphaBeta ponder");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		PhwarBoard copy = board.copy();
+		ponderHash = 0;
+		deadline = Long.MAX_VALUE;
+		search.setToken(null);
+		Future<?> started = ponderExecutor.submit(() -> {
+			search.setDeadline(Long.MAX_VALUE);
+			search.search(copy, Math.min(2, maxTurns));
+			if (search.isStopped() || guessTurn(copy, search.getBestMove(), search.getBestCaptures())) {
+				return;
+			}
+			if (table != null) {
+				table.newSearch();
+			}
+			ponderHash = copy.getHash();
+			deepen(copy);
+		});
+		synchronized (this) {
+			pondering = started;
+		}
+	}
+
+	/**
+	 * Does the guessed turn of the other player.
+	 *
+	 * @return true if the turn wins the game, so there is nothing to ponder.
+	 */
+	private static boolean guessTurn(PhwarBoard board, int move, List<MoveCapture> captures) {
+		if (move == AlphaBetaSearch.NO_MOVE) {
+			board.doSkipMove();
+		} else if (board.doMove(PackedMove.getStart(move), PackedMove.getTarget(move))) {
+			return true;
+		}
+		if (captures != null && doCaptureAll(board, captures)) {
+			return true;
+		}
+		board.doNextPlayer();
+		return false;
+	}
+
+	/**
+	 * Aborts the pondering in progress and waits until it is done. Does nothing
+	 * if there is no pondering.
+	 */
+	@Override
+	public void stopPondering() {
+		Future<?> current = pondering;
+		if (current == null) {
+			return;
+		}
+		search.abort();
+		// the aborted search ends within a millisecond, so wait for it even if
+		// interrupted. Otherwise it would go on using the search and the table
+		boolean interrupted = false;
+		while (true) {
+			try {
+				current.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+				break;
+			}
+		}
+		finishPondering(current);
+		search.resume();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the pondering ends by itself, at the deadline or when the
+	 * token gets cancelled. If interrupted before, it gets aborted instead.
+	 */
+	private void waitForPondering(Future<?> current) {
+		try {
+			current.get();
+		} catch (InterruptedException e) {
+			stopPondering();
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		finishPondering(current);
+	}
+
+	/**
+	 * Forgets the pondering after it has ended, unless another one was started
+	 * in the meantime.
+	 */
+	private synchronized void finishPondering(Future<?> done) {
+		if (pondering == done) {
+			pondering = null;
+			ponderHash = 0;
+		}
+	}
+
+	/**
+	 * Lets every helper search its own copy of the board until it gets aborted.
+	 *
+	 * @return the running helpers.
+	 */
+	private List<Future<?>> startHelpers(PhwarBoard board) {
+		List<Future<?>> results = new ArrayList<>(helpers.length);
+		if (helpers.length == 0) {
+			return results;
+		}
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(helpers.length, r -> {
+				Thread thread = new Thread(r, "PhwarAIAlphaBeta helper");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		for (int i = 0; i < helpers.length; i++) {
+			AlphaBetaSearch helper = helpers[i];
+			PhwarBoard copy = board.copy();
+			// every second helper is 1 turn ahead of the main search
+			int firstTurns = Math.min(maxTurns, 1 + (i + 1) % 2);
+			helper.resume();
+			helper.setDeadline(Long.MAX_VALUE);
+			results.add(executor.submit(() -> {
+				for (int turns = firstTurns; turns <= maxTurns; turns++) {
+					helper.search(copy, turns);
+					if (helper.isStopped()) {
+						break;
+					}
+				}
+			}));
+		}
+		return results;
+	}
+
+	/**
+	 * Aborts all helpers and waits until they are done.
+	 */
+	private void stopHelpers(List<Future<?>> results) {
+		for (AlphaBetaSearch helper : helpers) {
+			helper.abort();
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -1,13 +1,103 @@
 package adver.sarius.phwar.ai;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import adver.sarius.phwar.ai.data.DataWriter;
+import adver.sarius.phwar.ai.data.PositionIndex;
+import adver.sarius.phwar.ai.data.TurnResult;
 import adver.sarius.phwar.model.PhwarBoard;
 
-public class PhwarAIDataReader extends PhwarAI{
+/**
+ * Plays the turns solved by {@link DataWriter}, looked up in a
+ * {@link PositionIndex}. The index is only opened at the first turn, and since
+ * it is mapped into memory instead of read, that takes the same time for any
+ * amount of solved boards. Boards that are not solved are left to another AI.
+ */
+public class PhwarAIDataReader extends PhwarAI {
+
+	private final Path path;
+	private final PhwarAI fallback;
+	private PositionIndex index;
+	private boolean opened;
+
+	/**
+	 * Reads the index at {@link PositionIndex#DEFAULT_PATH}, and searches the
+	 * other boards with a {@link PhwarAIAlphaBeta} of 1 second.
+	 */
+	public PhwarAIDataReader() {
+		this(PositionIndex.DEFAULT_PATH, new PhwarAIAlphaBeta(20, 1000));
+	}
+
+	/**
+	 * @param path
+	 *            the index file, written by
+	 *            {@link PositionIndex#write(Path, adver.sarius.phwar.model.BoardGeometry, java.util.SortedMap)
+	 *            write}. Doesn't need to exist.
+	 * @param fallback
+	 *            computes the turns of the boards that are not in the index.
+	 */
+	public PhwarAIDataReader(Path path, PhwarAI fallback) {
+		this.path = path;
+		this.fallback = fallback;
+	}
 
 	@Override
 	public void computeTurn(PhwarBoard board) {
-		// TODO Auto-generated method stub
-		
+		computeTurn(board, new CancellationToken(), Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Answers solved boards right away. The other boards are left to the
+	 * fallback, which gets the token, the deadline and the progress.
+	 */
+	@Override
+	public boolean computeTurn(PhwarBoard board, CancellationToken token, long deadline,
+			Consumer<SearchProgress> progress) {
+		this.captureIndex = 0;
+		TurnResult result = getIndex() == null ? null : index.probe(board);
+		if (result == null) {
+			boolean computed = fallback.computeTurn(board, token, deadline, progress);
+			this.move = fallback.move;
+			this.captures = fallback.captures;
+			return computed;
+		}
+		// the fallback might ponder a board that is not searched now
+		fallback.stopPondering();
+		this.move = result.move;
+		this.captures = result.captures;
+		if (progress != null) {
+			progress.accept(new SearchProgress(move, captures, 0));
+		}
+		return !token.isCancelled();
+	}
+
+	@Override
+	public void ponder(PhwarBoard board) {
+		fallback.ponder(board);
 	}
 
+	@Override
+	public void stopPondering() {
+		fallback.stopPondering();
+	}
+
+	/**
+	 * @return the index, or null if there is no valid index.
+	 */
+	private PositionIndex getIndex() {
+		if (!opened) {
+			opened = true;
+			try {
+				index = PositionIndex.open(path);
+			} catch (NoSuchFileException e) {
+				System.out.println("No solved boards at " + path);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return index;
+	}
 }
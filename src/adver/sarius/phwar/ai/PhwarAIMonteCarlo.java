@@ -0,0 +1,322 @@
+package adver.sarius.phwar.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Monte Carlo tree search. Instead of looking at every possible turn, it plays
+ * a lot of random games and prefers the turns that won most of them. The tree
+ * of turns grows into the turns that look promising, picked by the UCT formula
+ * that balances the win rate against turns that were not tried often yet. The
+ * turn that was tried the most is picked in the end.
+ * <p>
+ * The random games are played in parallel: every time a new turn is added to
+ * the tree, one random game per thread is played from there, each on its own
+ * copy of the board.
+ */
+public class PhwarAIMonteCarlo extends PhwarAI {
+
+	/** Weight of trying new turns, compared to the win rate. */
+	private static final double EXPLORATION = Math.sqrt(2);
+	/** Random games are stopped after this many turns and rated by particles. */
+	private static final int MAX_PLAYOUT_TURNS = 200;
+	/** Amount of added tree nodes between two progress reports. */
+	private static final int PROGRESS_INTERVAL = 1024;
+
+	private int maxIterations;
+	private long timeBudget;
+	private int threads;
+	private double time;
+	private int counts;
+	/** Runs the random games of the other threads, or null with only 1 thread. */
+	private ExecutorService executor;
+	/** Buffers and random numbers of each thread. */
+	private final Playout[] playouts;
+
+	/**
+	 * One turn in the tree. The statistics are from the view of the player that
+	 * did the turn.
+	 */
+	private static final class Node {
+		/** The turn leading to this node, see {@link TurnList}. */
+		final int[] turn;
+		/** The player that did the turn. */
+		final int player;
+		/** All turns of the next player, or null if not expanded yet. */
+		Node[] children;
+		int visits;
+		double wins;
+
+		Node(int[] turn, int player) {
+			this.turn = turn;
+			this.player = player;
+		}
+	}
+
+	/**
+	 * @param maxIterations
+	 *            maximum amount of tree nodes to add for each turn, or 0 for no
+	 *            limit.
+	 * @param timeBudget
+	 *            milliseconds to search for each turn, or 0 for no limit. Should
+	 *            not be 0 if maxIterations is 0.
+	 * @param threads
+	 *            amount of random games to play in parallel.
+	 */
+	public PhwarAIMonteCarlo(int maxIterations, long timeBudget, int threads) {
+		this.maxIterations = maxIterations;
+		this.timeBudget = timeBudget;
+		this.threads = Math.max(1, threads);
+		this.playouts = new Playout[this.threads];
+		for (int i = 0; i < playouts.length; i++) {
+			playouts[i] = new Playout(i);
+		}
+	}
+
+	@Override
+	public void computeTurn(PhwarBoard board) {
+		computeTurn(board, new CancellationToken(), Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Plays random games until the limits of this AI or the deadline are
+	 * reached, and reports the most tried turn every 1024 added tree nodes. Stops
+	 * after the current random games once the token is cancelled, and still sets
+	 * the most tried turn so far.
+	 */
+	@Override
+	public boolean computeTurn(PhwarBoard board, CancellationToken token, long deadline,
+			Consumer<SearchProgress> progress) {
+		long start = System.currentTimeMillis();
+		if (timeBudget > 0) {
+			deadline = Math.min(deadline, System.nanoTime() + timeBudget * 1000000);
+		}
+		this.captureIndex = 0;
+
+		PhwarBoard copy = board.copy();
+		BoardGeometry geometry = copy.getGeometry();
+		int[] moves = new int[MoveGenerator.getMaxMoves(geometry)];
+		CaptureChainGenerator chains = new CaptureChainGenerator(geometry);
+		Node root = new Node(null, -1);
+		expand(root, copy, moves, chains);
+		int rootDepth = copy.getUndoDepth();
+
+		long playoutCount = 0;
+		int iterations = 0;
+		while (root.children.length > 1 && (maxIterations <= 0 || iterations < maxIterations)
+				&& !AlphaBetaSearch.isPast(deadline) && !token.isCancelled()) {
+			iterations++;
+			if (progress != null && iterations % PROGRESS_INTERVAL == 0) {
+				Node best = mostVisited(root);
+				progress.accept(new SearchProgress(TurnList.toMove(geometry, best.turn),
+						TurnList.toCaptures(geometry, best.turn), 0));
+			}
+			List<Node> path = new ArrayList<>();
+			path.add(root);
+			Node node = root;
+			int[] results;
+			// go down the tree along the most promising turns, until a new one is added
+			while (true) {
+				boolean expanded = node.children == null;
+				if (expanded) {
+					expand(node, copy, moves, chains);
+				}
+				node = select(node);
+				path.add(node);
+				if (TurnList.apply(copy, node.turn)) {
+					// nothing left to play
+					results = new int[threads];
+					Arrays.fill(results, node.player);
+					break;
+				}
+				copy.doNextPlayer();
+				if (expanded) {
+					results = playAll(copy);
+					break;
+				}
+			}
+			playoutCount += results.length;
+			for (Node n : path) {
+				n.visits += results.length;
+				for (int winner : results) {
+					if (winner == n.player) {
+						n.wins++;
+					} else if (winner < 0) {
+						n.wins += 0.5;
+					}
+				}
+			}
+			copy.undoTo(rootDepth);
+		}
+
+		Node best = mostVisited(root);
+		this.move = TurnList.toMove(geometry, best.turn);
+		this.captures = TurnList.toCaptures(geometry, best.turn);
+
+		long diff = System.currentTimeMillis() - start;
+		time += diff;
+		counts++;
+		System.out.println("(" + board.getCurrentPlayer() + ") Time needed: " + diff + " Average: " + (time / counts)
+				+ ". Playouts: " + playoutCount + " (" + (diff > 0 ? playoutCount * 1000 / diff : playoutCount)
+				+ "/s). Win rate: " + (best.visits > 0 ? best.wins / best.visits : 0));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * @return the child that was tried the most, or the first of them.
+	 */
+	private static Node mostVisited(Node node) {
+		Node best = node.children[0];
+		for (Node child : node.children) {
+			if (child.visits > best.visits) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds all turns of the current player as children.
+	 */
+	private static void expand(Node node, PhwarBoard board, int[] moves, CaptureChainGenerator chains) {
+		TurnList turns = TurnList.generate(board, moves, chains);
+		node.children = new Node[turns.size()];
+		for (int i = 0; i < turns.size(); i++) {
+			node.children[i] = new Node(turns.get(i), board.getCurrentPlayer());
+		}
+	}
+
+	/**
+	 * @return the child with the best UCT value. Children without any visits
+	 *         come first.
+	 */
+	private static Node select(Node node) {
+		Node best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		double logVisits = Math.log(Math.max(1, node.visits));
+		for (Node child : node.children) {
+			if (child.visits == 0) {
+				return child;
+			}
+			double value = child.wins / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+			if (value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Plays one random game per thread, starting at the given board.
+	 *
+	 * @return the winner of each game, or -1 for a draw.
+	 */
+	private int[] playAll(PhwarBoard board) {
+		int[] results = new int[threads];
+		if (threads > 1 && executor == null) {
+			executor = Executors.newFixedThreadPool(threads - 1, r -> {
+				Thread thread = new Thread(r, "PhwarAIMonteCarlo playout");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		List<Future<Integer>> futures = new ArrayList<>(threads - 1);
+		for (int i = 1; i < threads; i++) {
+			Playout playout = playouts[i];
+			PhwarBoard copy = board.copy();
+			futures.add(executor.submit(() -> playout.play(copy)));
+		}
+		results[0] = playouts[0].play(board.copy());
+		for (int i = 1; i < threads; i++) {
+			try {
+				results[i] = futures.get(i - 1).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				results[i] = -1;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Plays random games. Each thread needs its own instance.
+	 */
+	private static final class Playout {
+		private final Random random;
+		private int[] moves = new int[0];
+		private int[] captures = new int[0];
+
+		Playout(int seed) {
+			this.random = new Random(seed);
+		}
+
+		/**
+		 * Plays random turns until someone wins. A neutron that can move to the
+		 * center always does so.
+		 *
+		 * @param board
+		 *            the board to play on, will be modified.
+		 * @return the winner, or -1 if nobody won in time and the most particles
+		 *         are shared by multiple players.
+		 */
+		int play(PhwarBoard board) {
+			BoardGeometry geometry = board.getGeometry();
+			if (moves.length == 0) {
+				moves = new int[MoveGenerator.getMaxMoves(geometry)];
+				captures = new int[MoveGenerator.getMaxCaptures(geometry)];
+			}
+			for (int turn = 0; turn < MAX_PLAYOUT_TURNS; turn++) {
+				int player = board.getCurrentPlayer();
+				int moveCount = MoveGenerator.generateMoves(board, moves, 0);
+				if (moveCount == 0) {
+					board.doSkipMove();
+				} else {
+					int move = moves[random.nextInt(moveCount)];
+					for (int i = 0; i < moveCount; i++) {
+						if (PackedMove.hasFlag(moves[i], PackedMove.FLAG_WIN)) {
+							move = moves[i];
+							break;
+						}
+					}
+					if (board.doMove(PackedMove.getStart(move), PackedMove.getTarget(move))) {
+						return player;
+					}
+				}
+				for (int count = MoveGenerator.generateCaptures(board, captures, 0); count > 0; count = MoveGenerator
+						.generateCaptures(board, captures, 0)) {
+					int capture = captures[random.nextInt(count)];
+					if (board.doCapture(PackedMove.getStart(capture), PackedMove.getTarget(capture))) {
+						return player;
+					}
+				}
+				board.doNextPlayer();
+			}
+			// the player with the most particles wins
+			int winner = -1;
+			int most = -1;
+			for (int player = 0; player < board.getBitBoard().getPlayerCount(); player++) {
+				int count = board.getBitBoard().countParticles(player);
+				if (count > most) {
+					winner = player;
+					most = count;
+				} else if (count == most) {
+					winner = -1;
+				}
+			}
+			return winner;
+		}
+	}
+}
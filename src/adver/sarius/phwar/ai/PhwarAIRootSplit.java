@@ -0,0 +1,146 @@
+package adver.sarius.phwar.ai;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Rates the turns the same way as {@link PhwarAIAlphaBeta}, but splits the
+ * first turn into one task for every move and capture result, which are
+ * searched in parallel. Every task works on its own copy of the board. The best
+ * rating found so far is shared between all tasks, so later tasks can skip
+ * more turns. Picks the same move as the single threaded search, no matter
+ * which task finishes first.
+ * <p>
+ * Uses a virtual thread for every task if the JDK supports them, otherwise a
+ * ForkJoinPool.
+ */
+public class PhwarAIRootSplit extends PhwarAI {
+	private int maxTurns;
+	private double time;
+	private int counts;
+	/** Runs the tasks, created on first use. */
+	private ExecutorService executor;
+	/** Searches that are not used by any task right now. */
+	private final ConcurrentLinkedQueue<AlphaBetaSearch> searches = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param maxTurns
+	 *            amount of turns to look ahead, including the own one.
+	 */
+	public PhwarAIRootSplit(int maxTurns) {
+		this.maxTurns = maxTurns;
+	}
+
+	@Override
+	public void computeTurn(PhwarBoard board) {
+		long start = System.currentTimeMillis();
+		this.captureIndex = 0;
+		this.move = null;
+		this.captures = null;
+
+		PhwarBoard copy = board.copy();
+		BoardGeometry geometry = copy.getGeometry();
+		// one task for every move and every distinct capture result after it
+		TurnList turns = TurnList.generate(copy, new int[MoveGenerator.getMaxMoves(geometry)],
+				new CaptureChainGenerator(geometry));
+		int best = 0;
+		if (!turns.isWinning()) {
+			best = searchTasks(copy, turns);
+		}
+		this.move = TurnList.toMove(geometry, turns.get(best));
+		this.captures = TurnList.toCaptures(geometry, turns.get(best));
+
+		long diff = System.currentTimeMillis() - start;
+		time += diff;
+		counts++;
+		System.out.println("(" + board.getCurrentPlayer() + ") Time needed: " + diff + " Average: " + (time / counts)
+				+ ". Tasks: " + turns.size());
+	}
+
+	/**
+	 * Rates all tasks in parallel.
+	 *
+	 * @return index of the first task with the best rating.
+	 */
+	private int searchTasks(PhwarBoard board, TurnList tasks) {
+		if (executor == null) {
+			executor = createExecutor();
+		}
+		AtomicInteger alpha = new AtomicInteger(-AlphaBetaSearch.INFINITY);
+		int[] values = new int[tasks.size()];
+		List<Future<?>> results = new ArrayList<>(tasks.size());
+		for (int i = 0; i < tasks.size(); i++) {
+			int index = i;
+			PhwarBoard copy = board.copy();
+			results.add(executor.submit(() -> {
+				values[index] = rateTask(copy, tasks.get(index), alpha.get());
+				alpha.accumulateAndGet(values[index], Math::max);
+			}));
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 0;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		// results above the shared alpha are exact, so the first best one wins ties
+		int best = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[best]) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Does the move and captures of the task and rates the result. Ratings equal
+	 * to the given alpha are still exact, so ties can be resolved by task order.
+	 */
+	private int rateTask(PhwarBoard board, int[] task, int alpha) {
+		TurnList.apply(board, task);
+		if (maxTurns <= 1) {
+			return AlphaBetaSearch.evaluate(board);
+		}
+		board.doNextPlayer();
+		AlphaBetaSearch search = searches.poll();
+		if (search == null) {
+			search = new AlphaBetaSearch();
+		}
+		try {
+			// good value for next player is bad value for current player
+			return -search.search(board, 2, maxTurns, -AlphaBetaSearch.INFINITY, 1 - alpha);
+		} finally {
+			searches.add(search);
+		}
+	}
+
+	/**
+	 * @return an executor with a new virtual thread for every task, or a
+	 *         ForkJoinPool if the JDK doesn't support virtual threads.
+	 */
+	private static ExecutorService createExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Java 8, or virtual threads are still a preview feature
+			return ForkJoinPool.commonPool();
+		}
+	}
+}
@@ -1,11 +1,5 @@
 package adver.sarius.phwar.ai;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-import adver.sarius.phwar.model.Particle;
 import adver.sarius.phwar.model.PhwarBoard;
 
 /**
@@ -24,6 +18,10 @@ public class PhwarAISinglePath extends PhwarAI {
 	private int counts;
 	private final double winValue = 1000000;
 	private int winInTurn = Integer.MAX_VALUE;
+	/** Reusable buffer for the generated moves of each turn. */
+	private int[][] moveBuffers;
+	/** Reusable capture generator for each turn. */
+	private CaptureChainGenerator[] chainGenerators;
 
 	public PhwarAISinglePath(int maxTurns) {
 		this.maxTurns = maxTurns;
@@ -37,6 +35,13 @@ public class PhwarAISinglePath extends PhwarAI {
 		this.captureIndex = 0;
 
 		PhwarBoard copy = new PhwarBoard(board);
+		if (moveBuffers == null) {
+			moveBuffers = new int[maxTurns + 1][MoveGenerator.getMaxMoves(board.getGeometry())];
+			chainGenerators = new CaptureChainGenerator[maxTurns + 1];
+			for (int i = 0; i < chainGenerators.length; i++) {
+				chainGenerators[i] = new CaptureChainGenerator(board.getGeometry());
+			}
+		}
 		PhwarBoard.counter = 0;
 		rateTurns(copy, 1);
 		long diff = System.currentTimeMillis() - start;
@@ -51,18 +56,20 @@ public class PhwarAISinglePath extends PhwarAI {
 				- board.getParticles().size();
 	}
 
-	// modifies the board
+	// modifies the board, but reverts all changes before returning
 	private double rateAllPossibleCapturesAndProceed(PhwarBoard board, int currentTurn, double bestValueBefore) {
 		double bestValue = Double.NEGATIVE_INFINITY;
 
-		Map<Particle, Set<Particle>> capturer = board.computeParticlesThatCanCapture();
-		if (capturer.isEmpty()) {
+		CaptureChainGenerator chains = chainGenerators[currentTurn];
+		int chainCount = chains.generate(board);
+		if (chainCount == 0) {
 			if (currentTurn >= maxTurns) {
 				bestValue = computeBoardValue(board);
 			} else {
-				board.nextPlayerUnchecked();
+				board.doNextPlayer();
 				// good value for next player is bad value for current player
 				bestValue = -rateTurns(board, currentTurn + 1);
+				board.undo();
 			}
 
 			if (currentTurn == 1 && bestValue > bestValueBefore) {
@@ -71,33 +78,31 @@ public class PhwarAISinglePath extends PhwarAI {
 			}
 			return bestValue;
 		} else {
-			// test capturing with each capturer
-			for (Particle p : capturer.keySet()) {
-				// test every capture path when starting with that capturer
-				for (List<MoveCapture> l : MoveCapture.getAllPossibleCaptureCombinations(board, p, capturer.get(p))) {
-					PhwarBoard copy = new PhwarBoard(board);
-					if (captureAllUnchecked(copy, l)) {
-						if (currentTurn == 1) {
-							this.captures = l;
-						}
-						return winValue;
-					} else {
-						double value;
-						if (currentTurn >= maxTurns) {
-							value = computeBoardValue(copy);
-						} else {
-							copy.nextPlayerUnchecked();
-							// +l.size() to make him capture early?
-							value = -rateTurns(copy, currentTurn + 1);
-						}
+			// test every distinct result of the possible capture paths
+			for (int chain = 0; chain < chainCount; chain++) {
+				if (chains.isWinning(chain)) {
+					if (currentTurn == 1) {
+						this.captures = chains.toMoveCaptures(board.getGeometry(), chain);
+					}
+					return winValue;
+				}
+				int undoDepth = board.getUndoDepth();
+				chains.apply(board, chain);
+				double value;
+				if (currentTurn >= maxTurns) {
+					value = computeBoardValue(board);
+				} else {
+					board.doNextPlayer();
+					// +l.size() to make him capture early?
+					value = -rateTurns(board, currentTurn + 1);
+				}
+				board.undoTo(undoDepth);
 
-						if (value > bestValue) {
-							bestValue = value;
-							if (currentTurn == 1 && bestValue > bestValueBefore) {
-								winInTurn = getWinTurnForValue(bestValue);
-								this.captures = l;
-							}
-						}
+				if (value > bestValue) {
+					bestValue = value;
+					if (currentTurn == 1 && bestValue > bestValueBefore) {
+						winInTurn = getWinTurnForValue(bestValue);
+						this.captures = chains.toMoveCaptures(board.getGeometry(), chain);
 					}
 				}
 			}
@@ -122,7 +127,7 @@ public class PhwarAISinglePath extends PhwarAI {
 		return winInTurn;
 	}
 
-	// modifies the board
+	// modifies the board, but reverts all changes before returning
 	private double rateTurns(PhwarBoard board, int currentTurn) {
 		double bestValue = Double.NEGATIVE_INFINITY;
 		if (currentTurn == winInTurn - 1) {
@@ -135,62 +140,64 @@ public class PhwarAISinglePath extends PhwarAI {
 			// is returned.
 			return 0;
 		}
+		int[] moves = moveBuffers[currentTurn];
+		int moveCount = MoveGenerator.generateMoves(board, moves, 0);
 		// can't move anything. But maybe still can capture?
-		if (!board.needToMove()) {
+		if (moveCount == 0) {
+			board.doSkipMove();
 			bestValue = rateAllPossibleCapturesAndProceed(board, currentTurn, bestValue);
+			board.undo();
 			if (currentTurn == 1) {
 				this.move = null;
 			}
 			return bestValue;
 		}
-		for (Particle part : board.getParticles().stream().filter(p -> p.getPlayer() == board.getCurrentPlayer())
-				.collect(Collectors.toSet())) {
-			Set<MoveCapture> moves = MoveCapture.getAllPossibleMoves(board, part.getPosX(), part.getPosY());
-			// test all possible moves per particle
-			for (MoveCapture m : moves) {
-				PhwarBoard copy = new PhwarBoard(board);
-				if (copy.moveUnchecked(m.startX, m.startY, m.targetX, m.targetY)) {
-					if (currentTurn == 1) { // first round win, pick this move.
-						this.move = m;
-						this.captures = null;
-					}
-					// win in 2 turns is better than win in 5 turns
-					return winValue / currentTurn;
+		// test all possible moves
+		for (int i = 0; i < moveCount; i++) {
+			int m = moves[i];
+			if (board.doMove(PackedMove.getStart(m), PackedMove.getTarget(m))) {
+				board.undo();
+				if (currentTurn == 1) { // first round win, pick this move.
+					this.move = PackedMove.toMoveCapture(board.getGeometry(), m);
+					this.captures = null;
 				}
+				// win in 2 turns is better than win in 5 turns
+				return winValue / currentTurn;
+			}
 
-				double rating = rateAllPossibleCapturesAndProceed(copy, currentTurn, bestValue);
-				if (rating > bestValue) {
-					bestValue = rating;
-					if (currentTurn == 1) {
-						this.move = m;
-					}
-					if (bestValue == winValue) { // instant win by capturing
-						return winValue / currentTurn;
-					}
+			double rating = rateAllPossibleCapturesAndProceed(board, currentTurn, bestValue);
+			board.undo();
+			if (rating > bestValue) {
+				bestValue = rating;
+				if (currentTurn == 1) {
+					this.move = PackedMove.toMoveCapture(board.getGeometry(), m);
+				}
+				if (bestValue == winValue) { // instant win by capturing
+					return winValue / currentTurn;
 				}
-
-				/**
-				 * Set<Particle> capturer = copy.computeParticlesThatCanCapture(); if
-				 * (capturer.isEmpty()) { double value; if (currentTurn >= maxTurns) { value =
-				 * computeBoardValue(copy); } else { // good value for next player is bad value
-				 * for current player value = -xy(copy, currentTurn + 1); }
-				 * 
-				 * if (value >= bestValue) { bestValue = value; if (currentTurn == 1) {
-				 * this.move = m; this.captures = null; } } } else { // test capturing with each
-				 * capturer for (Particle p : capturer) { // test every capture path when
-				 * starting with that capturer for (List<MoveCapture> l :
-				 * getAllPossibleCaptureCombinations(copy, p)) { PhwarBoard copy2 = new
-				 * PhwarBoard(copy); if (captureAll(copy2, l)) { if (currentTurn == 1) {
-				 * this.move = m; this.captures = l; } return winValue / currentTurn; } else {
-				 * 
-				 * double value; if (currentTurn >= maxTurns) { value =
-				 * computeBoardValue(copy2); } else { // +l.size() not really necessary? I just
-				 * like capturing particles early value = -xy(copy2, 1) + l.size(); }
-				 * 
-				 * if (value >= bestValue) { bestValue = value; if (currentTurn == 1) {
-				 * this.move = m; this.captures = l; } } } } } }
-				 **/
 			}
+
+			/**
+			 * Set<Particle> capturer = copy.computeParticlesThatCanCapture(); if
+			 * (capturer.isEmpty()) { double value; if (currentTurn >= maxTurns) { value =
+			 * computeBoardValue(copy); } else { // good value for next player is bad value
+			 * for current player value = -xy(copy, currentTurn + 1); }
+			 * 
+			 * if (value >= bestValue) { bestValue = value; if (currentTurn == 1) {
+			 * this.move = m; this.captures = null; } } } else { // test capturing with each
+			 * capturer for (Particle p : capturer) { // test every capture path when
+			 * starting with that capturer for (List<MoveCapture> l :
+			 * getAllPossibleCaptureCombinations(copy, p)) { PhwarBoard copy2 = new
+			 * PhwarBoard(copy); if (captureAll(copy2, l)) { if (currentTurn == 1) {
+			 * this.move = m; this.captures = l; } return winValue / currentTurn; } else {
+			 * 
+			 * double value; if (currentTurn >= maxTurns) { value =
+			 * computeBoardValue(copy2); } else { // +l.size() not really necessary? I just
+			 * like capturing particles early value = -xy(copy2, 1) + l.size(); }
+			 * 
+			 * if (value >= bestValue) { bestValue = value; if (currentTurn == 1) {
+			 * this.move = m; this.captures = l; } } } } } }
+			 **/
 		}
 		return bestValue;
 	}
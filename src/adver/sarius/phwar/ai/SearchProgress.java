@@ -0,0 +1,55 @@
+package adver.sarius.phwar.ai;
+
+import java.util.List;
+
+/**
+ * The best turn an AI found so far, reported while it is still computing.
+ */
+public final class SearchProgress {
+
+	private final MoveCapture move;
+	private final List<MoveCapture> captures;
+	private final int depth;
+
+	/**
+	 * @param move
+	 *            the best move so far, or null if no particle can move.
+	 * @param captures
+	 *            the captures after the move, or null if there are none.
+	 * @param depth
+	 *            amount of turns that were looked ahead to find it, or 0 if the
+	 *            AI doesn't search by turns.
+	 */
+	public SearchProgress(MoveCapture move, List<MoveCapture> captures, int depth) {
+		this.move = move;
+		this.captures = captures;
+		this.depth = depth;
+	}
+
+	/**
+	 * @return the best move so far, or null if no particle can move.
+	 */
+	public MoveCapture getMove() {
+		return move;
+	}
+
+	/**
+	 * @return the captures after the move, or null if there are none. Must not
+	 *         be modified.
+	 */
+	public List<MoveCapture> getCaptures() {
+		return captures;
+	}
+
+	/**
+	 * @return amount of turns that were looked ahead, or 0 if unknown.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	@Override
+	public String toString() {
+		return "Depth " + depth + ": " + move + (captures == null ? "" : " " + captures);
+	}
+}
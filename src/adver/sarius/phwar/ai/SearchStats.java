@@ -0,0 +1,308 @@
+package adver.sarius.phwar.ai;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the searches of one turn did, to compare and tune them. All
+ * threads of a search can add to the same instance, since every counter is a
+ * {@link LongAdder}, which spreads the additions of different threads over
+ * different cells. The searches only add their own counters once after each
+ * iteration, so counting doesn't slow them down.
+ * <p>
+ * The numbers can be read at any time, also while searching, and can be
+ * published over JMX with {@link #publish(String)}.
+ */
+public class SearchStats implements SearchStatsMXBean {
+
+	/** Domain of the published JMX names. */
+	public static final String JMX_DOMAIN = "adver.sarius.phwar";
+
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder leaves = new LongAdder();
+	private final LongAdder quiescenceNodes = new LongAdder();
+	private final LongAdder tableProbes = new LongAdder();
+	private final LongAdder tableHits = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+	/** Completed iterations of the main search, in order. */
+	private final List<Iteration> iterations = new CopyOnWriteArrayList<>();
+	/** Time of {@link System#nanoTime()} of the last reset. */
+	private volatile long startTime = System.nanoTime();
+	/** Time of {@link System#nanoTime()} of the last addition. */
+	private volatile long endTime = startTime;
+	/** The name it's published with, or null. */
+	private ObjectName objectName;
+
+	/**
+	 * One complete iteration of a search, that searched a fixed amount of turns.
+	 */
+	public static final class Iteration {
+		private final int depth;
+		private final long nodes;
+		private final long nanos;
+
+		/**
+		 * @param depth
+		 *            amount of turns searched.
+		 * @param nodes
+		 *            amount of turns searched by the main search in this
+		 *            iteration.
+		 * @param nanos
+		 *            time the iteration took in nanoseconds.
+		 */
+		public Iteration(int depth, long nodes, long nanos) {
+			this.depth = depth;
+			this.nodes = nodes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return amount of turns searched.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * @return amount of turns searched by the main search.
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return time the iteration took in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		@Override
+		public String toString() {
+			return depth + ": " + nodes + " in " + nanos / 1000000 + "ms";
+		}
+	}
+
+	/**
+	 * Sets all numbers back to 0, for example before the search of a new turn.
+	 */
+	public void reset() {
+		nodes.reset();
+		leaves.reset();
+		quiescenceNodes.reset();
+		tableProbes.reset();
+		tableHits.reset();
+		cutoffs.reset();
+		firstMoveCutoffs.reset();
+		iterations.clear();
+		startTime = System.nanoTime();
+		endTime = startTime;
+	}
+
+	/**
+	 * Adds the counters of one search. Can be called by any thread.
+	 *
+	 * @param search
+	 *            the search that just returned.
+	 */
+	void add(AlphaBetaSearch search) {
+		nodes.add(search.getNodes());
+		leaves.add(search.getLeaves());
+		quiescenceNodes.add(search.getQuiescenceNodes());
+		tableProbes.add(search.getTableProbes());
+		tableHits.add(search.getTableHits());
+		cutoffs.add(search.getCutoffs());
+		firstMoveCutoffs.add(search.getFirstMoveCutoffs());
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Records a completed iteration of the main search.
+	 *
+	 * @param iteration
+	 *            the iteration.
+	 */
+	void addIteration(Iteration iteration) {
+		iterations.add(iteration);
+	}
+
+	/**
+	 * @return amount of searched turns of all threads, including the quiescence
+	 *         turns.
+	 */
+	@Override
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	/**
+	 * @return amount of boards rated by the evaluator.
+	 */
+	@Override
+	public long getLeaves() {
+		return leaves.sum();
+	}
+
+	/**
+	 * @return amount of turns searched after the last turn.
+	 */
+	@Override
+	public long getQuiescenceNodes() {
+		return quiescenceNodes.sum();
+	}
+
+	/**
+	 * @return amount of lookups in the transposition table.
+	 */
+	@Override
+	public long getTableProbes() {
+		return tableProbes.sum();
+	}
+
+	/**
+	 * @return amount of lookups that found an entry of the same board.
+	 */
+	@Override
+	public long getTableHits() {
+		return tableHits.sum();
+	}
+
+	/**
+	 * @return share of the lookups that found an entry, between 0 and 1.
+	 */
+	@Override
+	public double getTableHitRate() {
+		long probes = getTableProbes();
+		return probes == 0 ? 0 : (double) getTableHits() / probes;
+	}
+
+	/**
+	 * @return amount of turns where one move was good enough to skip the others.
+	 */
+	@Override
+	public long getCutoffs() {
+		return cutoffs.sum();
+	}
+
+	/**
+	 * @return share of the cutoffs that happened at the first tried move,
+	 *         between 0 and 1. The closer to 1, the better the moves are sorted.
+	 */
+	@Override
+	public double getFirstMoveCutoffRate() {
+		long all = getCutoffs();
+		return all == 0 ? 0 : (double) firstMoveCutoffs.sum() / all;
+	}
+
+	/**
+	 * @return searched turns per second of all threads together.
+	 */
+	@Override
+	public double getNodesPerSecond() {
+		long nanos = endTime - startTime;
+		return nanos <= 0 ? 0 : getNodes() * 1e9 / nanos;
+	}
+
+	/**
+	 * @return how many more turns the main search needed for each additional
+	 *         turn, from the last 2 completed iterations. Or the root of the
+	 *         turns to the depth if there was only 1 iteration, and 0 if there
+	 *         was none.
+	 */
+	@Override
+	public double getEffectiveBranchingFactor() {
+		List<Iteration> list = new ArrayList<>(iterations);
+		if (list.isEmpty()) {
+			return 0;
+		}
+		Iteration last = list.get(list.size() - 1);
+		if (list.size() == 1) {
+			return Math.pow(last.nodes, 1.0 / last.depth);
+		}
+		Iteration previous = list.get(list.size() - 2);
+		return previous.nodes == 0 ? 0 : (double) last.nodes / previous.nodes;
+	}
+
+	/**
+	 * @return amount of turns of the last completed iteration, or 0.
+	 */
+	@Override
+	public int getDepth() {
+		List<Iteration> list = new ArrayList<>(iterations);
+		return list.isEmpty() ? 0 : list.get(list.size() - 1).depth;
+	}
+
+	/**
+	 * @return the time each completed iteration took in milliseconds.
+	 */
+	@Override
+	public long[] getIterationMillis() {
+		List<Iteration> list = new ArrayList<>(iterations);
+		long[] millis = new long[list.size()];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = list.get(i).nanos / 1000000;
+		}
+		return millis;
+	}
+
+	/**
+	 * @return new list with all completed iterations, in order.
+	 */
+	public List<Iteration> getIterations() {
+		return new ArrayList<>(iterations);
+	}
+
+	/**
+	 * Registers the numbers at the platform MBean server, so they can be watched
+	 * with JConsole or any other JMX client. Replaces any earlier registration of
+	 * this instance.
+	 *
+	 * @param name
+	 *            name to tell the searches apart, for example the player.
+	 * @throws IllegalStateException
+	 *             if the name is invalid or already used by another instance.
+	 */
+	public synchronized void publish(String name) {
+		unpublish();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName newName = new ObjectName(JMX_DOMAIN + ":type=SearchStats,name=" + ObjectName.quote(name));
+			server.registerMBean(this, newName);
+			objectName = newName;
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Removes the registration of {@link #publish(String)}. Does nothing if not
+	 * published.
+	 */
+	public synchronized void unpublish() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// already gone
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String toString() {
+		return "Turns searched: " + getNodes() + " (" + (long) getNodesPerSecond() + "/s). Depth: " + getDepth()
+				+ ". Branching factor: " + Math.round(getEffectiveBranchingFactor() * 10) / 10.0
+				+ ". First move cutoffs: " + Math.round(getFirstMoveCutoffRate() * 100) + "%. Table hits: "
+				+ Math.round(getTableHitRate() * 100) + "%";
+	}
+}
@@ -0,0 +1,32 @@
+package adver.sarius.phwar.ai;
+
+/**
+ * The numbers of {@link SearchStats} that are published over JMX. See there
+ * for the meaning of each value.
+ */
+public interface SearchStatsMXBean {
+
+	long getNodes();
+
+	long getLeaves();
+
+	long getQuiescenceNodes();
+
+	long getTableProbes();
+
+	long getTableHits();
+
+	double getTableHitRate();
+
+	long getCutoffs();
+
+	double getFirstMoveCutoffRate();
+
+	double getNodesPerSecond();
+
+	double getEffectiveBranchingFactor();
+
+	int getDepth();
+
+	long[] getIterationMillis();
+}
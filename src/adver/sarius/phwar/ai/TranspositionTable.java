@@ -0,0 +1,198 @@
+package adver.sarius.phwar.ai;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the results of already searched positions, since the same board
+ * is reached by many different orders of moves and captures. The table has a
+ * fixed size and is stored in one preallocated long array, 2 longs per entry.
+ * The first long is the hash of the board xor the data, so an entry that got
+ * partly overwritten by another thread just doesn't match anymore. That way
+ * multiple threads can use the same table without any locks.
+ * <p>
+ * The entries are grouped into buckets of 2. A new result replaces the entry
+ * of the same board, an entry of an older search, or else the entry that was
+ * searched less deep.
+ */
+public final class TranspositionTable {
+
+	/** The stored rating is a lower bound, the real rating might be higher. */
+	public static final int BOUND_LOWER = 1;
+	/** The stored rating is an upper bound, the real rating might be lower. */
+	public static final int BOUND_UPPER = 2;
+	/** The stored rating is exact. */
+	public static final int BOUND_EXACT = 3;
+
+	private static final int MOVE_BITS = 25;
+	private static final int SCORE_BITS = 21;
+	private static final int DEPTH_BITS = 8;
+	private static final int BOUND_BITS = 2;
+	private static final int SCORE_SHIFT = MOVE_BITS;
+	private static final int DEPTH_SHIFT = SCORE_SHIFT + SCORE_BITS;
+	private static final int BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+	private static final int AGE_SHIFT = BOUND_SHIFT + BOUND_BITS;
+	/** Added to the ratings, so they are never negative when stored. */
+	private static final int SCORE_OFFSET = 1 << (SCORE_BITS - 1);
+	private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+	/** 2 longs per entry, and 2 entries per bucket. */
+	private static final int LONGS_PER_BUCKET = 4;
+
+	/** Hash xor data, followed by the data of each entry. */
+	private final long[] table;
+	/** Mask to get the bucket of a hash. */
+	private final int bucketMask;
+	/** Counter of the current search, to find entries of older searches. */
+	private volatile int age;
+
+	/**
+	 * @param sizeInMb
+	 *            size of the table in megabytes. Will be rounded down to a power
+	 *            of 2.
+	 */
+	public TranspositionTable(int sizeInMb) {
+		long buckets = Math.max(1, ((long) sizeInMb << 20) / (LONGS_PER_BUCKET * Long.BYTES));
+		// stay below the maximum array size
+		buckets = Math.min(Long.highestOneBit(buckets), 1 << 28);
+		this.table = new long[(int) buckets * LONGS_PER_BUCKET];
+		this.bucketMask = (int) buckets - 1;
+	}
+
+	/**
+	 * Marks all current entries as old, so they get replaced first. Should be
+	 * called before searching another turn.
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * @return amount of entries the table can hold.
+	 */
+	public int getCapacity() {
+		return table.length / 2;
+	}
+
+	/**
+	 * Searches the entry of the board.
+	 *
+	 * @param hash
+	 *            the hash of the board, see
+	 *            {@link adver.sarius.phwar.model.PhwarBoard#getHash() getHash}.
+	 * @return the data of the entry, to be read by {@link #getScore(long)
+	 *         getScore} and the other getters. Or 0 if there is no entry for
+	 *         the board.
+	 */
+	public long probe(long hash) {
+		int index = bucketIndex(hash);
+		for (int i = index; i < index + LONGS_PER_BUCKET; i += 2) {
+			long data = table[i + 1];
+			if ((table[i] ^ data) == hash && data != 0) {
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores the result of a search. A deeper result for the same board from the
+	 * current search is kept, unless the new one is exact.
+	 *
+	 * @param hash
+	 *            the hash of the board.
+	 * @param depth
+	 *            amount of turns that got searched from this board.
+	 * @param bound
+	 *            one of BOUND_LOWER, BOUND_UPPER or BOUND_EXACT.
+	 * @param score
+	 *            the rating of the board.
+	 * @param move
+	 *            the best {@link PackedMove packed move}, or -1 if there is none.
+	 */
+	public void store(long hash, int depth, int bound, int score, int move) {
+		int age = this.age;
+		long data = (move < 0 ? 0 : move & ((1L << MOVE_BITS) - 1))
+				| ((long) (score + SCORE_OFFSET) << SCORE_SHIFT)
+				| ((long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) age << AGE_SHIFT);
+		int index = bucketIndex(hash);
+		int replace = index;
+		int replaceDepth = Integer.MAX_VALUE;
+		for (int i = index; i < index + LONGS_PER_BUCKET; i += 2) {
+			long old = table[i + 1];
+			if (old == 0) {
+				replace = i;
+				break;
+			}
+			if ((table[i] ^ old) == hash) {
+				// a deeper bound of this search, for example from a helper,
+				// is worth more than a shallower one
+				if (getAge(old) == age && getDepth(old) > getDepth(data) && bound != BOUND_EXACT) {
+					return;
+				}
+				replace = i;
+				break;
+			}
+			// older searches count as not searched at all
+			int oldDepth = getAge(old) == age ? getDepth(old) : -1;
+			if (oldDepth < replaceDepth) {
+				replace = i;
+				replaceDepth = oldDepth;
+			}
+		}
+		table[replace] = hash ^ data;
+		table[replace + 1] = data;
+	}
+
+	/**
+	 * @param data
+	 *            an entry returned by {@link #probe(long) probe}.
+	 * @return the stored rating.
+	 */
+	public static int getScore(long data) {
+		return (int) ((data >>> SCORE_SHIFT) & ((1L << SCORE_BITS) - 1)) - SCORE_OFFSET;
+	}
+
+	/**
+	 * @param data
+	 *            an entry returned by {@link #probe(long) probe}.
+	 * @return amount of turns that got searched.
+	 */
+	public static int getDepth(long data) {
+		return (int) ((data >>> DEPTH_SHIFT) & MAX_DEPTH);
+	}
+
+	/**
+	 * @param data
+	 *            an entry returned by {@link #probe(long) probe}.
+	 * @return one of BOUND_LOWER, BOUND_UPPER or BOUND_EXACT.
+	 */
+	public static int getBound(long data) {
+		return (int) ((data >>> BOUND_SHIFT) & ((1 << BOUND_BITS) - 1));
+	}
+
+	/**
+	 * @param data
+	 *            an entry returned by {@link #probe(long) probe}.
+	 * @return the best {@link PackedMove packed move}, or -1 if there is none.
+	 */
+	public static int getMove(long data) {
+		int move = (int) (data & ((1L << MOVE_BITS) - 1));
+		return move == 0 ? -1 : move;
+	}
+
+	private static int getAge(long data) {
+		return (int) (data >>> AGE_SHIFT);
+	}
+
+	private int bucketIndex(long hash) {
+		return ((int) (hash ^ (hash >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+	}
+}
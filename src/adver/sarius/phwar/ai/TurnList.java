@@ -0,0 +1,151 @@
+package adver.sarius.phwar.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * All possible turns of the current player. Each turn is stored as one int
+ * array, starting with the {@link PackedMove packed move} or
+ * {@link AlphaBetaSearch#NO_MOVE NO_MOVE}, followed by the packed captures of
+ * one distinct capture result. If a turn wins the game, only that turn is kept,
+ * since no other turn can be better.
+ */
+final class TurnList {
+
+	private final List<int[]> turns = new ArrayList<>();
+	private boolean winning;
+
+	/**
+	 * Computes all turns of the current player. The board is modified during the
+	 * computation, but restored again before returning.
+	 *
+	 * @param board
+	 *            the board to compute the turns for.
+	 * @param moves
+	 *            buffer for the moves, see {@link MoveGenerator#getMaxMoves}.
+	 * @param chains
+	 *            generator for the capture results.
+	 * @return the turns in the order of the generators.
+	 */
+	static TurnList generate(PhwarBoard board, int[] moves, CaptureChainGenerator chains) {
+		TurnList list = new TurnList();
+		int moveCount = MoveGenerator.generateMoves(board, moves, 0);
+		if (moveCount == 0) {
+			// can't move anything, but maybe still can capture
+			moves[0] = AlphaBetaSearch.NO_MOVE;
+			moveCount = 1;
+		}
+		for (int i = 0; i < moveCount && !list.winning; i++) {
+			int move = moves[i];
+			if (move == AlphaBetaSearch.NO_MOVE) {
+				board.doSkipMove();
+			} else if (board.doMove(PackedMove.getStart(move), PackedMove.getTarget(move))) {
+				board.undo();
+				list.setWinning(new int[] { move });
+				break;
+			}
+			int chainCount = chains.generate(board);
+			board.undo();
+			if (chainCount == 0) {
+				list.turns.add(new int[] { move });
+			}
+			for (int chain = 0; chain < chainCount; chain++) {
+				int[] turn = new int[chains.getChainLength(chain) + 1];
+				turn[0] = move;
+				for (int step = 0; step < chains.getChainLength(chain); step++) {
+					turn[step + 1] = chains.getCapture(chain, step);
+				}
+				if (chains.isWinning(chain)) {
+					list.setWinning(turn);
+					break;
+				}
+				list.turns.add(turn);
+			}
+		}
+		return list;
+	}
+
+	private void setWinning(int[] turn) {
+		turns.clear();
+		turns.add(turn);
+		winning = true;
+	}
+
+	/**
+	 * @return amount of turns.
+	 */
+	int size() {
+		return turns.size();
+	}
+
+	/**
+	 * @param index
+	 *            index of the turn.
+	 * @return the move followed by the captures. Must not be modified.
+	 */
+	int[] get(int index) {
+		return turns.get(index);
+	}
+
+	/**
+	 * @return true if the only turn in the list wins the game.
+	 */
+	boolean isWinning() {
+		return winning;
+	}
+
+	/**
+	 * Does the move and captures of the turn with the reversible board methods.
+	 * Does not finish the turn.
+	 *
+	 * @param board
+	 *            the board the turn was generated for.
+	 * @param turn
+	 *            the turn to do.
+	 * @return true if the game is won by this turn, otherwise false.
+	 */
+	static boolean apply(PhwarBoard board, int[] turn) {
+		if (turn[0] == AlphaBetaSearch.NO_MOVE) {
+			board.doSkipMove();
+		} else if (board.doMove(PackedMove.getStart(turn[0]), PackedMove.getTarget(turn[0]))) {
+			return true;
+		}
+		boolean won = false;
+		for (int step = 1; step < turn.length; step++) {
+			won = board.doCapture(PackedMove.getStart(turn[step]), PackedMove.getTarget(turn[step]));
+		}
+		return won;
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board the turn was generated for.
+	 * @param turn
+	 *            the turn.
+	 * @return the move of the turn, or null if no particle can move.
+	 */
+	static MoveCapture toMove(BoardGeometry geometry, int[] turn) {
+		return turn[0] == AlphaBetaSearch.NO_MOVE ? null : PackedMove.toMoveCapture(geometry, turn[0]);
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board the turn was generated for.
+	 * @param turn
+	 *            the turn.
+	 * @return new list with the captures of the turn, or null if there are none.
+	 */
+	static List<MoveCapture> toCaptures(BoardGeometry geometry, int[] turn) {
+		if (turn.length == 1) {
+			return null;
+		}
+		List<MoveCapture> captures = new ArrayList<>(turn.length - 1);
+		for (int step = 1; step < turn.length; step++) {
+			captures.add(PackedMove.toMoveCapture(geometry, turn[step]));
+		}
+		return captures;
+	}
+}
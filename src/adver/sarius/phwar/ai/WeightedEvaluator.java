@@ -0,0 +1,98 @@
+package adver.sarius.phwar.ai;
+
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.PhwarBoard;
+import adver.sarius.phwar.model.SightMap;
+
+/**
+ * Rates the board by a weighted sum of some terms for each player. The terms
+ * of the current player are added, the terms of all other players are
+ * subtracted. The terms are:
+ * <ul>
+ * <li>material: the particles of each charge, with its own weight per
+ * charge,</li>
+ * <li>neutron distance: the steps of all neutrons to the center, which is
+ * subtracted since closer is better,</li>
+ * <li>mobility: the empty cells next to the particles,</li>
+ * <li>threats: the particles some other player could capture right now, which
+ * is subtracted.</li>
+ * </ul>
+ * All terms are kept up to date with every move and capture: the material,
+ * neutron distance and mobility by the {@link BitBoard}, the threats by its
+ * {@link SightMap}. A move or capture only changes the neighbours of 2 cells
+ * and the particles on their lines, so the counts are updated there instead of
+ * counted again. Rating a board only reads these counts, which takes the same
+ * time no matter how many particles are on the board.
+ */
+public final class WeightedEvaluator implements Evaluator {
+
+	/** Default weight of each particle. */
+	public static final int DEFAULT_MATERIAL = 100;
+	/** Default weight of each step of a neutron to the center. */
+	public static final int DEFAULT_NEUTRON_DISTANCE = 8;
+	/** Default weight of each empty cell next to a particle. */
+	public static final int DEFAULT_MOBILITY = 2;
+	/** Default weight of each particle that can be captured. */
+	public static final int DEFAULT_THREAT = 30;
+
+	/** Weight of the particles of each charge, indexed by charge + 1. */
+	private final int[] material;
+	private final int neutronDistance;
+	private final int mobility;
+	private final int threat;
+
+	/**
+	 * Uses the default weights.
+	 */
+	public WeightedEvaluator() {
+		this(DEFAULT_MATERIAL, DEFAULT_MATERIAL, DEFAULT_MATERIAL, DEFAULT_NEUTRON_DISTANCE, DEFAULT_MOBILITY,
+				DEFAULT_THREAT);
+	}
+
+	/**
+	 * @param electron
+	 *            weight of each electron, with charge -1.
+	 * @param neutron
+	 *            weight of each neutron, with charge 0.
+	 * @param positron
+	 *            weight of each positron, with charge +1.
+	 * @param neutronDistance
+	 *            weight of each step of a neutron to the center.
+	 * @param mobility
+	 *            weight of each empty cell next to a particle.
+	 * @param threat
+	 *            weight of each particle that another player can capture.
+	 */
+	public WeightedEvaluator(int electron, int neutron, int positron, int neutronDistance, int mobility, int threat) {
+		this.material = new int[] { electron, neutron, positron };
+		this.neutronDistance = neutronDistance;
+		this.mobility = mobility;
+		this.threat = threat;
+	}
+
+	@Override
+	public int evaluate(PhwarBoard board) {
+		BitBoard bitBoard = board.getBitBoard();
+		int current = board.getCurrentPlayer();
+		int value = 0;
+		for (int player = 0; player < bitBoard.getPlayerCount(); player++) {
+			int rating = rate(bitBoard, player);
+			value += player == current ? rating : -rating;
+		}
+		return Math.max(-MAX_RATING, Math.min(MAX_RATING, value));
+	}
+
+	/**
+	 * @return the weighted terms of one player.
+	 */
+	private int rate(BitBoard bitBoard, int player) {
+		int rating = 0;
+		for (int charge = -1; charge <= 1; charge++) {
+			rating += material[charge + 1] * bitBoard.countParticles(player, charge);
+		}
+		rating -= neutronDistance * bitBoard.getNeutronDistance(player);
+		rating += mobility * bitBoard.getFreeNeighbours(player);
+		rating -= threat * bitBoard.getSightMap().countCapturable(player);
+		return rating;
+	}
+}
@@ -4,27 +4,37 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import adver.sarius.phwar.ai.MoveCapture;
+import adver.sarius.phwar.ai.PackedMove;
 import adver.sarius.phwar.ai.PhwarAI;
+import adver.sarius.phwar.model.BoardGeometry;
 import adver.sarius.phwar.model.Particle;
 import adver.sarius.phwar.model.PhwarBoard;
+import adver.sarius.phwar.model.PositionKey;
 
 // TODO: better name
 public class DataWriter {
 
 	public static void main(String[] args) {
 
-		// format: particles;rating;winInRounds;bonusRating;x/y>X/Y;capx/capy>capX/capY#caps...
+		// format: positionKey;rating;winInRounds;bonusRating;x/y>X/Y;capx/capy>capX/capY#caps...
 
 		PhwarBoard board = new PhwarBoard();
+		if (args.length > 0 && args[0].equals("index")) {
+			writeIndex(board.getGeometry());
+			return;
+		}
 
 		loadData();
 		doSomething(board);
@@ -76,7 +86,7 @@ public class DataWriter {
 				res.oneTurnBonusRating = Double.parseDouble(splitted[3]);
 				res.rating = Double.parseDouble(splitted[1]);
 				res.winInTurns = Integer.parseInt(splitted[2]);
-				bestTurnResult.put(splitted[0], res);
+				bestTurnResult.put(PositionKey.parse(splitted[0]), res);
 			});
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -84,24 +94,59 @@ public class DataWriter {
 		// TODO: load not rated boards
 	}
 
-	private static Map<String, TurnResult> bestTurnResult = new HashMap<>();
-	private static Set<String> notRatedBoards = new HashSet<>();
-	private static Set<String> visitedBoards = new HashSet<>();
+	/**
+	 * Converts the solved boards of the text file into the
+	 * {@link PositionIndex} for {@link adver.sarius.phwar.ai.PhwarAIDataReader
+	 * PhwarAIDataReader}, which doesn't need to read the whole file at startup.
+	 * 
+	 * @param geometry
+	 *            the geometry of the solved boards.
+	 */
+	private static void writeIndex(BoardGeometry geometry) {
+		SortedMap<PositionKey, TurnResult> results = new TreeMap<>();
+		try (Stream<String> stream = Files.lines(Paths.get("src/adver/sarius/phwar/ai/data", "PhwarMoves.txt"))) {
+			stream.forEach(s -> {
+				String[] splitted = s.split(";", -1);
+				TurnResult res = new TurnResult();
+				res.rating = Double.parseDouble(splitted[1]);
+				res.winInTurns = Integer.parseInt(splitted[2]);
+				res.oneTurnBonusRating = Double.parseDouble(splitted[3]);
+				res.move = splitted[4].equals("null") ? null : MoveCapture.parse(splitted[4]);
+				if (!splitted[5].isEmpty()) {
+					res.captures = new ArrayList<>();
+					for (String capture : splitted[5].split("#")) {
+						res.captures.add(MoveCapture.parse(capture));
+					}
+				}
+				results.put(PositionKey.parse(splitted[0]), res);
+			});
+			PositionIndex.write(PositionIndex.DEFAULT_PATH, geometry, results);
+			System.out.println("Wrote " + results.size() + " boards to " + PositionIndex.DEFAULT_PATH);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static Map<PositionKey, TurnResult> bestTurnResult = new HashMap<>();
+	// keyed by PhwarBoard.getCanonicalHash()
+	private static Set<Long> notRatedBoards = new HashSet<>();
+	private static Set<Long> visitedBoards = new HashSet<>();
 
 	private static TurnResult doSomething(PhwarBoard board) {
-		String normalized = board.getNormalizedParticlesString();
+		PositionKey normalized = board.getCanonicalKey();
+		long canonical = board.getCanonicalHash();
 		if (bestTurnResult.containsKey(normalized)) {
 			System.out.println("returned normalized");
 			return bestTurnResult.get(normalized);
-		} else if (visitedBoards.contains(normalized)) {
+		} else if (visitedBoards.contains(canonical)) {
 //			System.out.println("entered loop");
 			// still trying to compute the value of this board, so treat as drawn
 			TurnResult loopResult = new TurnResult();
 			loopResult.rating = 0;
-			loopResult.insideLoops.add(normalized);
+			loopResult.insideLoops.add(canonical);
 			return loopResult;
 		} else {
-			visitedBoards.add(normalized);
+			visitedBoards.add(canonical);
 		}
 		// all possible move+capture results that can be done from the current board
 		Set<TurnResult> results = new HashSet<>();
@@ -127,7 +172,7 @@ public class DataWriter {
 		}
 
 		TurnResult best = null;
-		Set<String> loops = new HashSet<>();
+		Set<Long> loops = new HashSet<>();
 		double bestRating = Double.NEGATIVE_INFINITY;
 		int wins = 0;
 		int loss = 0;
@@ -155,20 +200,23 @@ public class DataWriter {
 		// his other wins.
 		best.oneTurnBonusRating = winNotWinRatio * ((results.size() - wins) / wins) + lossDist / loss;
 		best.insideLoops.addAll(loops);
-		best.insideLoops.remove(normalized);
+		best.insideLoops.remove(canonical);
 
-		tryToSaveResult(normalized, best);
+		tryToSaveResult(board, normalized, canonical, best);
 		return best;
 	}
 	// TODO: Are my loop preventions working for mirrored boards where turn 2 is the
 	// loop of turn 1?
 
-	private static void tryToSaveResult(String normalizedBoard, TurnResult best) {
+	private static void tryToSaveResult(PhwarBoard board, PositionKey normalizedBoard, long canonical,
+			TurnResult best) {
 		if (best.insideLoops.isEmpty()) {
 			bestTurnResult.put(normalizedBoard, best);
 			System.out.println("saving result");
 			try {
-				Files.write(Paths.get("src/adver/sarius/phwar/ai/data", "PhwarMoves.txt"), (normalizedBoard+best.getAppendingToFile()).getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+				// saved for the board of the key, so it fits all boards with that key
+				String line = normalizedBoard + toCanonical(board, best).getAppendingToFile() + System.lineSeparator();
+				Files.write(Paths.get("src/adver/sarius/phwar/ai/data", "PhwarMoves.txt"), line.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -176,8 +224,33 @@ public class DataWriter {
 			System.out.println("skip save because loop");
 			// don't save boards within a loop, since the rating and move may be incorrect.
 			// TODO: Save not rated boards
-			notRatedBoards.add(normalizedBoard);
+			notRatedBoards.add(canonical);
+		}
+	}
+
+	/**
+	 * @return a copy of the result, with move and captures transformed to the
+	 *         symmetry of {@link PhwarBoard#getCanonicalKey()}.
+	 */
+	private static TurnResult toCanonical(PhwarBoard board, TurnResult result) {
+		BoardGeometry geometry = board.getGeometry();
+		int symmetry = board.getCanonicalSymmetry();
+		TurnResult canonical = new TurnResult();
+		canonical.rating = result.rating;
+		canonical.winInTurns = result.winInTurns;
+		canonical.oneTurnBonusRating = result.oneTurnBonusRating;
+		if (result.move != null) {
+			canonical.move = PackedMove.toMoveCapture(geometry,
+					PositionIndex.transform(geometry, PackedMove.fromMoveCapture(geometry, result.move), symmetry));
+		}
+		if (result.captures != null) {
+			canonical.captures = new ArrayList<>();
+			for (MoveCapture capture : result.captures) {
+				canonical.captures.add(PackedMove.toMoveCapture(geometry,
+						PositionIndex.transform(geometry, PackedMove.fromMoveCapture(geometry, capture), symmetry)));
+			}
 		}
+		return canonical;
 	}
 
 	/** Maximum points for having a lot of not-winning alternative moves. **/
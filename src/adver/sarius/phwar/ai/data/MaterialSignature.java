@@ -0,0 +1,190 @@
+package adver.sarius.phwar.ai.data;
+
+import java.util.Arrays;
+
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * The particles of both players of a game with 2 players, counted by charge.
+ * Like in {@link PhwarBoard#getCanonicalHash()}, the player whose turn it is
+ * comes first. All boards with the same signature belong to the same
+ * {@link Tablebase}.
+ * <p>
+ * The particles are numbered in a fixed order: first the ones of the current
+ * player, then the ones of the other player, each sorted by charge from
+ * electrons to positrons. Particles with the same number always have the same
+ * player and charge.
+ */
+public final class MaterialSignature {
+
+	/** Particles by player, then by charge + 1. */
+	private final int[][] counts;
+	/** Owner of each particle, 0 for the current player. */
+	private final int[] players;
+	/** Charge of each particle. */
+	private final int[] charges;
+
+	/**
+	 * @param own
+	 *            amount of electrons, neutrons and positrons of the current
+	 *            player.
+	 * @param other
+	 *            amount of electrons, neutrons and positrons of the other
+	 *            player.
+	 * @throws IllegalArgumentException
+	 *             if a player misses a charge, since he would have lost already.
+	 */
+	public MaterialSignature(int[] own, int[] other) {
+		this.counts = new int[][] { own.clone(), other.clone() };
+		int total = 0;
+		for (int[] count : counts) {
+			if (count.length != 3 || count[0] < 1 || count[1] < 1 || count[2] < 1) {
+				throw new IllegalArgumentException("Each player needs at least 1 particle of every charge.");
+			}
+			total += count[0] + count[1] + count[2];
+		}
+		this.players = new int[total];
+		this.charges = new int[total];
+		int particle = 0;
+		for (int player = 0; player < 2; player++) {
+			for (int charge = -1; charge <= 1; charge++) {
+				for (int i = 0; i < counts[player][charge + 1]; i++) {
+					players[particle] = player;
+					charges[particle] = charge;
+					particle++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the format of {@link #toString()}, for example "211v111" for 2
+	 * electrons, 1 neutron and 1 positron against 1 of each.
+	 *
+	 * @param signature
+	 *            the signature to parse.
+	 * @return the signature.
+	 * @throws IllegalArgumentException
+	 *             if the format is wrong.
+	 */
+	public static MaterialSignature parse(String signature) {
+		String[] parts = signature.split("v");
+		if (parts.length != 2 || parts[0].length() != 3 || parts[1].length() != 3) {
+			throw new IllegalArgumentException("Expected a signature like 111v111, but got " + signature);
+		}
+		int[][] counts = new int[2][3];
+		for (int player = 0; player < 2; player++) {
+			for (int i = 0; i < 3; i++) {
+				counts[player][i] = Character.digit(parts[player].charAt(i), 10);
+			}
+		}
+		return new MaterialSignature(counts[0], counts[1]);
+	}
+
+	/**
+	 * @param board
+	 *            a board with 2 active players.
+	 * @return the signature of the board, or null if it has not exactly 2 active
+	 *         players.
+	 */
+	public static MaterialSignature of(PhwarBoard board) {
+		if (board.getActivePlayerCount() != 2 || board.hasWon()) {
+			return null;
+		}
+		BitBoard bitBoard = board.getBitBoard();
+		int current = board.getCurrentPlayer();
+		int other = -1;
+		for (int cell = bitBoard.nextOccupied(0); cell >= 0; cell = bitBoard.nextOccupied(cell + 1)) {
+			int player = bitBoard.getParticle(cell).getPlayer();
+			if (player != current) {
+				other = player;
+				break;
+			}
+		}
+		if (other < 0) {
+			return null;
+		}
+		int[][] counts = new int[2][3];
+		for (int charge = -1; charge <= 1; charge++) {
+			counts[0][charge + 1] = bitBoard.countParticles(current, charge);
+			counts[1][charge + 1] = bitBoard.countParticles(other, charge);
+		}
+		return new MaterialSignature(counts[0], counts[1]);
+	}
+
+	/**
+	 * @return the same particles, but with the other player to move.
+	 */
+	public MaterialSignature swap() {
+		return new MaterialSignature(counts[1], counts[0]);
+	}
+
+	/**
+	 * @return true if both players have the same particles, so that
+	 *         {@link #swap()} returns an equal signature.
+	 */
+	public boolean isSymmetric() {
+		return Arrays.equals(counts[0], counts[1]);
+	}
+
+	/**
+	 * @return amount of particles of both players.
+	 */
+	public int getParticleCount() {
+		return players.length;
+	}
+
+	/**
+	 * @param player
+	 *            0 for the current player, 1 for the other one.
+	 * @return amount of particles of that player.
+	 */
+	public int getParticleCount(int player) {
+		return counts[player][0] + counts[player][1] + counts[player][2];
+	}
+
+	/**
+	 * @param player
+	 *            0 for the current player, 1 for the other one.
+	 * @param charge
+	 *            the charge of the particles.
+	 * @return amount of particles of that player with that charge.
+	 */
+	public int getCount(int player, int charge) {
+		return counts[player][charge + 1];
+	}
+
+	/**
+	 * @param particle
+	 *            number of the particle.
+	 * @return 0 if it belongs to the current player, 1 for the other one.
+	 */
+	public int getPlayer(int particle) {
+		return players[particle];
+	}
+
+	/**
+	 * @param particle
+	 *            number of the particle.
+	 * @return the charge of the particle.
+	 */
+	public int getCharge(int particle) {
+		return charges[particle];
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof MaterialSignature && Arrays.deepEquals(counts, ((MaterialSignature) obj).counts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(counts);
+	}
+
+	@Override
+	public String toString() {
+		return "" + counts[0][0] + counts[0][1] + counts[0][2] + "v" + counts[1][0] + counts[1][1] + counts[1][2];
+	}
+}
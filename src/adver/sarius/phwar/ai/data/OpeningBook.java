@@ -0,0 +1,294 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import adver.sarius.phwar.ai.MoveGenerator;
+import adver.sarius.phwar.ai.PackedMove;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * The best turns of the first boards of a game, computed once by
+ * {@link OpeningBookBuilder} with a much deeper search than there is time for
+ * during a game. Since every game starts the same way, the AI can look them up
+ * instead of searching, see
+ * {@link adver.sarius.phwar.ai.PhwarAIAlphaBeta#setOpeningBook(OpeningBook)
+ * setOpeningBook}.
+ * <p>
+ * The boards are stored by {@link PhwarBoard#getCanonicalHash()}, so all
+ * rotations of a board share one entry. The turns are stored for the canonical
+ * rotation of the board, and rotated back when probed.
+ * <p>
+ * The file is mapped into memory instead of read, so opening it costs almost
+ * nothing and only the pages that are probed get loaded. It consists of:
+ * <ul>
+ * <li>A header with {@link #MAGIC}, {@link #VERSION}, the board size, the
+ * amount of entries and the amount of capture values.</li>
+ * <li>The entries, sorted by hash. Each one has the canonical hash as long, the
+ * {@link PackedMove packed} move as int or {@link #NO_MOVE}, and the index of
+ * its captures as int or -1 if there are none.</li>
+ * <li>The captures as ints. At each index is the amount of captures, followed
+ * by the packed captures.</li>
+ * </ul>
+ * Since the hashes are spread evenly, the entries are found by interpolating
+ * between the hashes of the bounds, which usually needs only 2 or 3 reads.
+ * Every second step halves the range instead, so it never needs more than twice
+ * as many reads as a binary search.
+ */
+public final class OpeningBook {
+
+	/** First int of every book file. */
+	public static final int MAGIC = 0x50424F4B;
+	/** Version of the file format. */
+	public static final int VERSION = 1;
+	/** Stored move for boards where no particle can move. */
+	public static final int NO_MOVE = -1;
+	/** Location of the book that is used by default. */
+	public static final Path DEFAULT_PATH = Paths.get("src/adver/sarius/phwar/ai/data", "PhwarOpenings.book");
+
+	private static final int HEADER_BYTES = 5 * 4;
+	private static final int ENTRY_BYTES = 8 + 4 + 4;
+
+	private final ByteBuffer buffer;
+	private final int boardSize;
+	private final int entryCount;
+	/** Byte offset of the first capture value. */
+	private final int capturesStart;
+
+	private OpeningBook(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported opening book version " + buffer.getInt(4));
+		}
+		this.boardSize = buffer.getInt(8);
+		this.entryCount = buffer.getInt(12);
+		int captureCount = buffer.getInt(16);
+		this.capturesStart = HEADER_BYTES + entryCount * ENTRY_BYTES;
+		if (entryCount < 0 || captureCount < 0
+				|| (long) capturesStart + captureCount * 4L != buffer.capacity()) {
+			throw new IOException("Corrupt opening book");
+		}
+	}
+
+	/**
+	 * Maps the book file into memory.
+	 *
+	 * @param path
+	 *            the file written by {@link #write(Path, int, SortedMap)}.
+	 * @return the book.
+	 * @throws IOException
+	 *             if the file can't be read or is no valid book.
+	 */
+	public static OpeningBook open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping stays valid after closing the channel
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Opens the book at {@link #DEFAULT_PATH}, if there is one.
+	 *
+	 * @return the book, or null if there is no valid book.
+	 */
+	public static OpeningBook openDefault() {
+		try {
+			return open(DEFAULT_PATH);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return size of the boards the book was computed for.
+	 */
+	public int getBoardSize() {
+		return boardSize;
+	}
+
+	/**
+	 * @return amount of boards in the book.
+	 */
+	public int size() {
+		return entryCount;
+	}
+
+	/**
+	 * Looks up the best turn for the current player. Doesn't allocate anything
+	 * if the board is not in the book.
+	 *
+	 * @param board
+	 *            the board to find the turn for. Must be at the start of the
+	 *            turn, before the move.
+	 * @return the turn rotated to fit the board, with only move and captures
+	 *         set. Or null if the board is not in the book.
+	 */
+	public TurnResult probe(PhwarBoard board) {
+		if (board.getSize() != boardSize) {
+			return null;
+		}
+		int entry = find(board.getCanonicalHash());
+		if (entry < 0) {
+			return null;
+		}
+		BoardGeometry geometry = board.getGeometry();
+		// the stored turn is for the canonical rotation, so rotate it back
+		int back = (6 - board.getCanonicalRotation()) % 6;
+		int position = HEADER_BYTES + entry * ENTRY_BYTES + 8;
+		int move = buffer.getInt(position);
+		int capturesIndex = buffer.getInt(position + 4);
+
+		TurnResult result = new TurnResult();
+		if (move != NO_MOVE) {
+			move = rotate(geometry, move, back);
+			if (!isPossibleMove(board, move)) {
+				// hash collision or broken file, better search normally
+				return null;
+			}
+			result.move = PackedMove.toMoveCapture(geometry, move);
+		}
+		if (capturesIndex >= 0) {
+			int index = capturesStart + capturesIndex * 4;
+			int count = buffer.getInt(index);
+			result.captures = new ArrayList<>(count);
+			for (int i = 1; i <= count; i++) {
+				result.captures.add(PackedMove.toMoveCapture(geometry, rotate(geometry, buffer.getInt(index + i * 4), back)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return index of the entry with the hash, or -1 if there is none.
+	 */
+	private int find(long hash) {
+		int low = 0;
+		int high = entryCount - 1;
+		boolean interpolate = true;
+		while (low <= high) {
+			long lowHash = hashAt(low);
+			long highHash = hashAt(high);
+			if (hash < lowHash || hash > highHash) {
+				return -1;
+			}
+			int mid;
+			if (interpolate && highHash != lowHash) {
+				// doubles, since the difference of the hashes might overflow
+				double share = ((double) hash - lowHash) / ((double) highHash - lowHash);
+				mid = low + (int) (share * (high - low));
+				mid = Math.max(low, Math.min(high, mid));
+			} else {
+				mid = (low + high) >>> 1;
+			}
+			interpolate = !interpolate;
+			long midHash = hashAt(mid);
+			if (midHash < hash) {
+				low = mid + 1;
+			} else if (midHash > hash) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private long hashAt(int entry) {
+		return buffer.getLong(HEADER_BYTES + entry * ENTRY_BYTES);
+	}
+
+	private static boolean isPossibleMove(PhwarBoard board, int move) {
+		int[] moves = new int[MoveGenerator.getMaxMoves(board.getGeometry())];
+		int count = MoveGenerator.generateMoves(board, moves, 0);
+		for (int i = 0; i < count; i++) {
+			if (PackedMove.withoutFlags(moves[i]) == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Rotates both cells of a {@link PackedMove packed} move, without flags.
+	 *
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @param move
+	 *            the move to rotate.
+	 * @param rotations
+	 *            number of rotations between 0 and 5, inclusive.
+	 * @return the rotated move.
+	 */
+	static int rotate(BoardGeometry geometry, int move, int rotations) {
+		return PackedMove.of(geometry.rotate(PackedMove.getStart(move), rotations),
+				geometry.rotate(PackedMove.getTarget(move), rotations), 0);
+	}
+
+	/**
+	 * Writes a new book file. Replaces any existing file.
+	 *
+	 * @param path
+	 *            the file to write.
+	 * @param boardSize
+	 *            size of the boards the turns were computed for.
+	 * @param turns
+	 *            the turns by canonical hash. Each turn is the packed move or
+	 *            {@link #NO_MOVE}, followed by the packed captures, all for the
+	 *            canonical rotation of the board.
+	 * @throws IOException
+	 *             if the file can't be written.
+	 */
+	public static void write(Path path, int boardSize, SortedMap<Long, int[]> turns) throws IOException {
+		List<Integer> captures = new ArrayList<>();
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+			int captureCount = 0;
+			for (int[] turn : turns.values()) {
+				captureCount += turn.length > 1 ? turn.length : 0;
+			}
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(boardSize);
+			out.writeInt(turns.size());
+			out.writeInt(captureCount);
+			// a sorted map of longs has the same order as the file
+			for (Map.Entry<Long, int[]> entry : turns.entrySet()) {
+				int[] turn = entry.getValue();
+				out.writeLong(entry.getKey());
+				out.writeInt(turn[0]);
+				if (turn.length > 1) {
+					out.writeInt(captures.size());
+					captures.add(turn.length - 1);
+					for (int i = 1; i < turn.length; i++) {
+						captures.add(turn[i]);
+					}
+				} else {
+					out.writeInt(-1);
+				}
+			}
+			for (int capture : captures) {
+				out.writeInt(capture);
+			}
+		}
+	}
+}
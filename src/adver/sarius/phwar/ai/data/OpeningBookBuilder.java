@@ -0,0 +1,128 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import adver.sarius.phwar.ai.CancellationToken;
+import adver.sarius.phwar.ai.CaptureChainGenerator;
+import adver.sarius.phwar.ai.MoveCapture;
+import adver.sarius.phwar.ai.MoveGenerator;
+import adver.sarius.phwar.ai.PackedMove;
+import adver.sarius.phwar.ai.PhwarAIAlphaBeta;
+import adver.sarius.phwar.ai.SearchProgress;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Computes the {@link OpeningBook} offline. Searches the best turn of every
+ * board that can be reached from the start within the given amount of turns,
+ * with a fixed amount of turns to look ahead. Boards that are rotations of
+ * each other are only searched once.
+ * <p>
+ * Arguments: amount of turns from the start (default 2), amount of turns to
+ * look ahead (default 5) and the file to write (default
+ * {@link OpeningBook#DEFAULT_PATH}). With 2 turns from the start there are
+ * about 60 boards, each one more turn multiplies that by about 60.
+ */
+public class OpeningBookBuilder {
+
+	public static void main(String[] args) throws IOException {
+		int plies = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Path path = args.length > 2 ? Paths.get(args[2]) : OpeningBook.DEFAULT_PATH;
+
+		PhwarBoard start = new PhwarBoard();
+		PhwarAIAlphaBeta ai = new PhwarAIAlphaBeta(depth);
+		SortedMap<Long, int[]> turns = new TreeMap<>();
+		Set<Long> seen = new HashSet<>();
+		seen.add(start.getCanonicalHash());
+		List<PhwarBoard> boards = new ArrayList<>();
+		boards.add(start);
+		for (int ply = 0; ply < plies && !boards.isEmpty(); ply++) {
+			List<PhwarBoard> next = new ArrayList<>();
+			for (PhwarBoard board : boards) {
+				turns.put(board.getCanonicalHash(), search(ai, board));
+				if (ply + 1 < plies) {
+					addFollowingBoards(board, seen, next);
+				}
+			}
+			System.out.println("Turn " + (ply + 1) + ": " + boards.size() + " boards");
+			boards = next;
+		}
+		OpeningBook.write(path, start.getSize(), turns);
+		System.out.println("Wrote " + turns.size() + " boards to " + path);
+	}
+
+	/**
+	 * @return the best turn in the format of
+	 *         {@link OpeningBook#write(Path, int, SortedMap)}.
+	 */
+	private static int[] search(PhwarAIAlphaBeta ai, PhwarBoard board) {
+		SearchProgress[] result = new SearchProgress[1];
+		ai.computeTurn(board.copy(), new CancellationToken(), Long.MAX_VALUE, p -> result[0] = p);
+		BoardGeometry geometry = board.getGeometry();
+		int rotation = board.getCanonicalRotation();
+		List<MoveCapture> captures = result[0].getCaptures();
+		int[] turn = new int[1 + (captures == null ? 0 : captures.size())];
+		turn[0] = result[0].getMove() == null ? OpeningBook.NO_MOVE
+				: OpeningBook.rotate(geometry, PackedMove.fromMoveCapture(geometry, result[0].getMove()), rotation);
+		for (int i = 1; i < turn.length; i++) {
+			turn[i] = OpeningBook.rotate(geometry, PackedMove.fromMoveCapture(geometry, captures.get(i - 1)), rotation);
+		}
+		return turn;
+	}
+
+	/**
+	 * Adds copies of all boards after the possible turns of the current player,
+	 * that are not won and were not seen before.
+	 */
+	private static void addFollowingBoards(PhwarBoard board, Set<Long> seen, List<PhwarBoard> boards) {
+		PhwarBoard copy = board.copy();
+		CaptureChainGenerator chains = new CaptureChainGenerator(copy.getGeometry());
+		int[] moves = new int[MoveGenerator.getMaxMoves(copy.getGeometry())];
+		int count = MoveGenerator.generateMoves(copy, moves, 0);
+		if (count == 0) {
+			copy.doSkipMove();
+			addAfterCaptures(copy, chains, seen, boards);
+			copy.undo();
+		}
+		for (int i = 0; i < count; i++) {
+			if (!copy.doMove(PackedMove.getStart(moves[i]), PackedMove.getTarget(moves[i]))) {
+				addAfterCaptures(copy, chains, seen, boards);
+			}
+			copy.undo();
+		}
+	}
+
+	private static void addAfterCaptures(PhwarBoard board, CaptureChainGenerator chains, Set<Long> seen,
+			List<PhwarBoard> boards) {
+		int chainCount = chains.generate(board);
+		if (chainCount == 0) {
+			addNextPlayer(board, seen, boards);
+		}
+		for (int chain = 0; chain < chainCount; chain++) {
+			if (chains.isWinning(chain)) {
+				continue;
+			}
+			int undoDepth = board.getUndoDepth();
+			chains.apply(board, chain);
+			addNextPlayer(board, seen, boards);
+			board.undoTo(undoDepth);
+		}
+	}
+
+	private static void addNextPlayer(PhwarBoard board, Set<Long> seen, List<PhwarBoard> boards) {
+		board.doNextPlayer();
+		if (seen.add(board.getCanonicalHash())) {
+			boards.add(board.copy());
+		}
+		board.undo();
+	}
+}
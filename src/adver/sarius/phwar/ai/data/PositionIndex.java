@@ -0,0 +1,297 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import adver.sarius.phwar.ai.MoveCapture;
+import adver.sarius.phwar.ai.PackedMove;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+import adver.sarius.phwar.model.PositionKey;
+
+/**
+ * The solved boards of {@link DataWriter}, stored by
+ * {@link PhwarBoard#getCanonicalKey()} in a sorted binary file. Unlike the
+ * hashes of the {@link OpeningBook}, the keys never collide, so the stored turn
+ * always belongs to the board. The turns are stored for the symmetry of the
+ * board that has the smallest key, see
+ * {@link PhwarBoard#getCanonicalSymmetry()}, and mapped back when probed.
+ * <p>
+ * The file is mapped into memory instead of read, so opening it takes the same
+ * time for any amount of boards, and only the pages that are probed get
+ * loaded. It consists of:
+ * <ul>
+ * <li>A header with {@link #MAGIC}, {@link #VERSION}, the board size, the
+ * amount of entries and the amount of capture values.</li>
+ * <li>The entries, sorted by key. Each one has the longs of the key, the
+ * rating as double, the turns to win as int, the {@link PackedMove packed}
+ * move as int or {@link #NO_MOVE}, and the index of its captures as int or -1
+ * if there are none.</li>
+ * <li>The captures as ints. At each index is the amount of captures, followed
+ * by the packed captures.</li>
+ * </ul>
+ * The entries are found like in the {@link OpeningBook}, by alternating
+ * between interpolating the first long of the keys and halving the range.
+ * Since the file is mapped as one buffer, it can have up to 2 gigabytes, which
+ * are about 30 million boards of size 5.
+ */
+public final class PositionIndex {
+
+	/** First int of every index file. */
+	public static final int MAGIC = 0x50494458;
+	/** Version of the file format. */
+	public static final int VERSION = 1;
+	/** Stored move for boards where no particle can move. */
+	public static final int NO_MOVE = -1;
+	/** Location of the index that is used by default. */
+	public static final Path DEFAULT_PATH = Paths.get("src/adver/sarius/phwar/ai/data", "PhwarMoves.index");
+
+	private static final int HEADER_BYTES = 5 * 4;
+
+	private final ByteBuffer buffer;
+	private final BoardGeometry geometry;
+	private final int keyWords;
+	private final int entryBytes;
+	private final int entryCount;
+	/** Byte offset of the first capture value. */
+	private final int capturesStart;
+
+	private PositionIndex(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a position index");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported position index version " + buffer.getInt(4));
+		}
+		this.geometry = BoardGeometry.of(buffer.getInt(8));
+		this.keyWords = PositionKey.getWordCount(geometry);
+		this.entryBytes = getEntryBytes(geometry);
+		this.entryCount = buffer.getInt(12);
+		int captureCount = buffer.getInt(16);
+		this.capturesStart = HEADER_BYTES + entryCount * entryBytes;
+		if (entryCount < 0 || captureCount < 0
+				|| (long) capturesStart + captureCount * 4L != buffer.capacity()) {
+			throw new IOException("Corrupt position index");
+		}
+	}
+
+	private static int getEntryBytes(BoardGeometry geometry) {
+		return PositionKey.getWordCount(geometry) * 8 + 8 + 4 + 4 + 4;
+	}
+
+	/**
+	 * Maps the index file into memory.
+	 *
+	 * @param path
+	 *            the file written by
+	 *            {@link #write(Path, BoardGeometry, SortedMap)}.
+	 * @return the index.
+	 * @throws IOException
+	 *             if the file can't be read or is no valid index.
+	 */
+	public static PositionIndex open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping stays valid after closing the channel
+			return new PositionIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @return size of the boards in the index.
+	 */
+	public int getBoardSize() {
+		return geometry.getSize();
+	}
+
+	/**
+	 * @return amount of boards in the index.
+	 */
+	public int size() {
+		return entryCount;
+	}
+
+	/**
+	 * Looks up the solved turn for the current player.
+	 *
+	 * @param board
+	 *            the board to find the turn for. Must be at the start of the
+	 *            turn, before the move.
+	 * @return the turn mapped to fit the board, with move, captures, rating and
+	 *         turns to win set. Or null if the board is not in the index.
+	 */
+	public TurnResult probe(PhwarBoard board) {
+		if (board.getSize() != geometry.getSize()) {
+			return null;
+		}
+		int entry = find(board.getCanonicalKey());
+		if (entry < 0) {
+			return null;
+		}
+		// the stored turn is for the canonical symmetry, so map it back
+		int back = BoardGeometry.inverse(board.getCanonicalSymmetry());
+		int position = HEADER_BYTES + entry * entryBytes + keyWords * 8;
+		TurnResult result = new TurnResult();
+		result.rating = buffer.getDouble(position);
+		result.winInTurns = buffer.getInt(position + 8);
+		int move = buffer.getInt(position + 12);
+		int capturesIndex = buffer.getInt(position + 16);
+		if (move != NO_MOVE) {
+			result.move = PackedMove.toMoveCapture(geometry, transform(geometry, move, back));
+		}
+		if (capturesIndex >= 0) {
+			int index = capturesStart + capturesIndex * 4;
+			int count = buffer.getInt(index);
+			result.captures = new ArrayList<>(count);
+			for (int i = 1; i <= count; i++) {
+				result.captures.add(PackedMove.toMoveCapture(geometry, transform(geometry, buffer.getInt(index + i * 4), back)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return index of the entry with the key, or -1 if there is none.
+	 */
+	private int find(PositionKey key) {
+		long first = key.getWord(0);
+		int low = 0;
+		int high = entryCount - 1;
+		boolean interpolate = true;
+		while (low <= high) {
+			long lowWord = wordAt(low, 0);
+			long highWord = wordAt(high, 0);
+			if (Long.compareUnsigned(first, lowWord) < 0 || Long.compareUnsigned(first, highWord) > 0) {
+				return -1;
+			}
+			int mid;
+			if (interpolate && highWord != lowWord) {
+				double share = (toDouble(first) - toDouble(lowWord)) / (toDouble(highWord) - toDouble(lowWord));
+				mid = low + (int) (share * (high - low));
+				mid = Math.max(low, Math.min(high, mid));
+			} else {
+				mid = (low + high) >>> 1;
+			}
+			interpolate = !interpolate;
+			int cmp = compareAt(mid, key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static double toDouble(long unsigned) {
+		// precise enough to interpolate
+		return (unsigned >>> 1) * 2.0;
+	}
+
+	private long wordAt(int entry, int word) {
+		return buffer.getLong(HEADER_BYTES + entry * entryBytes + word * 8);
+	}
+
+	/**
+	 * Compares the key of an entry with the key, in the order of
+	 * {@link PositionKey#compareTo(PositionKey)}.
+	 */
+	private int compareAt(int entry, PositionKey key) {
+		for (int word = 0; word < keyWords; word++) {
+			int cmp = Long.compareUnsigned(wordAt(entry, word), key.getWord(word));
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Maps both cells of a {@link PackedMove packed} move to another symmetry,
+	 * without flags.
+	 *
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @param move
+	 *            the move to map.
+	 * @param symmetry
+	 *            the symmetry between 0 and 11, see
+	 *            {@link BoardGeometry#transform(int, int)}.
+	 * @return the mapped move.
+	 */
+	static int transform(BoardGeometry geometry, int move, int symmetry) {
+		return PackedMove.of(geometry.transform(PackedMove.getStart(move), symmetry),
+				geometry.transform(PackedMove.getTarget(move), symmetry), 0);
+	}
+
+	/**
+	 * Writes a new index file. Replaces any existing file.
+	 *
+	 * @param path
+	 *            the file to write.
+	 * @param geometry
+	 *            the geometry of the boards.
+	 * @param results
+	 *            the solved turns by key, for the canonical symmetry of the
+	 *            boards.
+	 * @throws IOException
+	 *             if the file can't be written.
+	 */
+	public static void write(Path path, BoardGeometry geometry, SortedMap<PositionKey, TurnResult> results)
+			throws IOException {
+		int keyWords = PositionKey.getWordCount(geometry);
+		List<Integer> captures = new ArrayList<>();
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+			int captureCount = 0;
+			for (TurnResult result : results.values()) {
+				captureCount += result.captures != null ? result.captures.size() + 1 : 0;
+			}
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(geometry.getSize());
+			out.writeInt(results.size());
+			out.writeInt(captureCount);
+			// the keys are sorted by their longs, like the file
+			for (Map.Entry<PositionKey, TurnResult> entry : results.entrySet()) {
+				PositionKey key = entry.getKey();
+				TurnResult result = entry.getValue();
+				if (key.getWordCount() != keyWords) {
+					throw new IllegalArgumentException("Key " + key + " doesn't fit the board size " + geometry.getSize());
+				}
+				for (int word = 0; word < keyWords; word++) {
+					out.writeLong(key.getWord(word));
+				}
+				out.writeDouble(result.rating);
+				out.writeInt(result.winInTurns);
+				out.writeInt(result.move == null ? NO_MOVE : PackedMove.fromMoveCapture(geometry, result.move));
+				if (result.captures != null) {
+					out.writeInt(captures.size());
+					captures.add(result.captures.size());
+					for (MoveCapture capture : result.captures) {
+						captures.add(PackedMove.fromMoveCapture(geometry, capture));
+					}
+				} else {
+					out.writeInt(-1);
+				}
+			}
+			for (int capture : captures) {
+				out.writeInt(capture);
+			}
+		}
+	}
+}
@@ -0,0 +1,438 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import adver.sarius.phwar.ai.CaptureChainGenerator;
+import adver.sarius.phwar.ai.MoveGenerator;
+import adver.sarius.phwar.ai.PackedMove;
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.Particle;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Solves all boards of a {@link MaterialSignature} backwards, starting at the
+ * end of the game. Unlike the search from the current board in
+ * {@link DataWriter}, this doesn't get stuck in loops of boards: a board is
+ * only lost once every turn leads to a board that is won by the other player,
+ * and a board is won as soon as one turn leads to a lost board. Boards that
+ * are neither after nothing changes anymore are draws, since both players can
+ * avoid to lose forever.
+ * <p>
+ * It works in 2 steps:
+ * <ol>
+ * <li>Every board is searched 1 turn ahead. Boards that can win right away
+ * are won, by moving a neutron on the center, or by capturing the last
+ * particle of one charge. Turns that capture something lead to another
+ * signature, which is solved first. For all other turns it only counts the
+ * different boards they lead to.</li>
+ * <li>Starting with the shortest distance to the end of the game, all boards
+ * that can reach a won or lost board are found by taking back a move. A board
+ * before a lost one is won. For a board before a won one the counter goes down,
+ * and once it reaches 0, that board is lost.</li>
+ * </ol>
+ * Turns that capture something can't be taken back this way, but they always
+ * change the signature, so they are all found in the first step.
+ * <p>
+ * Since all boards of the signature are stored in arrays, only small
+ * signatures on small boards fit into memory. Each board takes 5 bytes, and
+ * thanks to {@link TablebaseIndex} there are about as many boards as ways to
+ * place the particles, divided by 6. For example 111v111 on a board of size 2
+ * needs about 16 megabytes, and on a board of size 3 about 1.4 gigabytes. Not
+ * thread safe.
+ */
+public class RetrogradeSolver {
+
+	/** Won, but a faster win through the same signature might be found. */
+	private static final byte PENDING_WIN = 4;
+	/** Counter of boards that can't be lost anymore. */
+	private static final short CANNOT_LOSE = -1;
+
+	private final BoardGeometry geometry;
+	private final Map<MaterialSignature, Tablebase> solved = new HashMap<>();
+	private final CaptureChainGenerator chains;
+	private final int[] moves;
+	/** Indices of the boards after or before the turns of one board. */
+	private final int[] neighbours;
+
+	/** Cells of the board that is solved right now. */
+	private int[] cells;
+	/** Cells of the boards after or before it. */
+	private int[] otherCells;
+	/** Fastest win of the current board by capturing, or MAX_VALUE. */
+	private int winDistance;
+	/** Slowest loss of the current board by capturing. */
+	private int lossDistance;
+	/** True if capturing leads to a draw. */
+	private boolean drawn;
+	/** Amount of boards in {@link #neighbours}. */
+	private int neighbourCount;
+
+	/**
+	 * @param size
+	 *            size of the boards to solve.
+	 */
+	public RetrogradeSolver(int size) {
+		this.geometry = BoardGeometry.of(size);
+		this.chains = new CaptureChainGenerator(geometry);
+		this.moves = new int[MoveGenerator.getMaxMoves(geometry)];
+		this.neighbours = new int[moves.length + 1];
+	}
+
+	/**
+	 * @return all tablebases solved so far, including the ones of the
+	 *         signatures reached by capturing.
+	 */
+	public Collection<Tablebase> getSolved() {
+		return Collections.unmodifiableCollection(solved.values());
+	}
+
+	/**
+	 * Solves the signature and all signatures that can be reached from it by
+	 * capturing. Each signature is only solved once.
+	 *
+	 * @param signature
+	 *            the particles of the boards to solve.
+	 * @return the results of all boards with the signature.
+	 * @throws IllegalArgumentException
+	 *             if the signature has too many boards.
+	 */
+	public Tablebase solve(MaterialSignature signature) {
+		Tablebase result = solved.get(signature);
+		if (result != null) {
+			return result;
+		}
+		for (MaterialSignature smaller : getCaptureSignatures(signature)) {
+			solve(smaller);
+		}
+		// turns without capture lead to the swapped signature, so both are solved together
+		Tablebase[] tables = signature.isSymmetric() ? new Tablebase[] { new Tablebase(signature, geometry) }
+				: new Tablebase[] { new Tablebase(signature, geometry), new Tablebase(signature.swap(), geometry) };
+		short[][] counters = new short[tables.length][];
+		cells = new int[signature.getParticleCount()];
+		otherCells = new int[signature.getParticleCount()];
+		for (int t = 0; t < tables.length; t++) {
+			counters[t] = new short[tables[t].size()];
+			searchTurns(tables[t], tables[tables.length - 1 - t], counters[t]);
+		}
+		takeBack(tables, counters);
+		for (Tablebase table : tables) {
+			for (int i = 0; i < table.size(); i++) {
+				if (table.values[i] == Tablebase.UNKNOWN && table.index.unrank(i, cells)) {
+					table.values[i] = Tablebase.DRAW;
+					table.distances[i] = 0;
+				}
+			}
+			solved.put(table.getSignature(), table);
+		}
+		return tables[0];
+	}
+
+	/**
+	 * @return all signatures that can be reached by capturing without losing.
+	 */
+	private static List<MaterialSignature> getCaptureSignatures(MaterialSignature signature) {
+		List<MaterialSignature> result = new ArrayList<>();
+		for (MaterialSignature side : new MaterialSignature[] { signature, signature.swap() }) {
+			int[] own = new int[3];
+			int[] other = new int[3];
+			for (int i = 0; i < 3; i++) {
+				own[i] = side.getCount(0, i - 1);
+				other[i] = side.getCount(1, i - 1);
+			}
+			// the captured player moves next
+			for (int electrons = 1; electrons <= other[0]; electrons++) {
+				for (int neutrons = 1; neutrons <= other[1]; neutrons++) {
+					for (int positrons = 1; positrons <= other[2]; positrons++) {
+						if (electrons + neutrons + positrons < other[0] + other[1] + other[2]) {
+							result.add(new MaterialSignature(new int[] { electrons, neutrons, positrons }, own));
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The first step: searches each board of the table 1 turn ahead.
+	 *
+	 * @param table
+	 *            the boards to search.
+	 * @param next
+	 *            the boards after turns without captures.
+	 * @param counters
+	 *            gets the amount of different boards of the next table, that
+	 *            can be reached by the turns of each board.
+	 */
+	private void searchTurns(Tablebase table, Tablebase next, short[] counters) {
+		for (int i = 0; i < table.size(); i++) {
+			if (!table.index.unrank(i, cells)) {
+				continue;
+			}
+			int finished = getFinishedValue(table.getSignature(), cells);
+			if (finished != Tablebase.UNKNOWN) {
+				table.values[i] = (byte) finished;
+				continue;
+			}
+			PhwarBoard board = toBoard(table.getSignature(), cells, false);
+			winDistance = Integer.MAX_VALUE;
+			lossDistance = 0;
+			drawn = false;
+			neighbourCount = 0;
+			int moveCount = MoveGenerator.generateMoves(board, moves, 0);
+			if (moveCount == 0) {
+				board.doSkipMove();
+				addTurns(board, next);
+				board.undo();
+			}
+			for (int m = 0; m < moveCount && winDistance > 1; m++) {
+				if (PackedMove.hasFlag(moves[m], PackedMove.FLAG_WIN)) {
+					winDistance = 1;
+					break;
+				}
+				board.doMove(PackedMove.getStart(moves[m]), PackedMove.getTarget(moves[m]));
+				addTurns(board, next);
+				board.undo();
+			}
+
+			if (winDistance != Integer.MAX_VALUE) {
+				table.values[i] = winDistance == 1 ? Tablebase.WIN : PENDING_WIN;
+				table.distances[i] = toDistance(winDistance);
+				counters[i] = CANNOT_LOSE;
+				continue;
+			}
+			int successors = removeDuplicates(neighbourCount);
+			table.distances[i] = toDistance(lossDistance);
+			if (drawn) {
+				counters[i] = CANNOT_LOSE;
+			} else if (successors == 0) {
+				// every turn captures, and every capture leads to a loss
+				table.values[i] = Tablebase.LOSS;
+			} else {
+				counters[i] = (short) successors;
+			}
+		}
+	}
+
+	/**
+	 * Adds the results of all turns after the move.
+	 */
+	private void addTurns(PhwarBoard board, Tablebase next) {
+		int chainCount = chains.generate(board);
+		if (chainCount == 0) {
+			// the other player is the first one in the next signature
+			next.index.read(board.getBitBoard(), 1, otherCells);
+			neighbours[neighbourCount++] = next.index.rank(otherCells);
+			return;
+		}
+		for (int chain = 0; chain < chainCount; chain++) {
+			if (chains.isWinning(chain)) {
+				winDistance = 1;
+				return;
+			}
+			int undoDepth = board.getUndoDepth();
+			chains.apply(board, chain);
+			board.doNextPlayer();
+			Tablebase smaller = solved.get(MaterialSignature.of(board));
+			int index = smaller.indexOf(board);
+			int value = smaller.getValue(index);
+			int distance = smaller.getDistance(index);
+			board.undoTo(undoDepth);
+			if (value == Tablebase.LOSS) {
+				winDistance = Math.min(winDistance, distance + 1);
+			} else if (value == Tablebase.WIN) {
+				lossDistance = Math.max(lossDistance, distance + 1);
+			} else {
+				drawn = true;
+			}
+		}
+	}
+
+	/**
+	 * The second step: goes through the won and lost boards by their distance,
+	 * and takes back the moves that lead to them.
+	 */
+	private void takeBack(Tablebase[] tables, short[][] counters) {
+		int maxDistance = 0;
+		for (Tablebase table : tables) {
+			for (int i = 0; i < table.size(); i++) {
+				if (table.values[i] != Tablebase.UNKNOWN) {
+					maxDistance = Math.max(maxDistance, table.distances[i]);
+				}
+			}
+		}
+		for (int distance = 0; distance <= maxDistance; distance++) {
+			for (int t = 0; t < tables.length; t++) {
+				Tablebase table = tables[t];
+				int previous = tables.length - 1 - t;
+				for (int i = 0; i < table.size(); i++) {
+					if (table.distances[i] != distance) {
+						continue;
+					}
+					if (table.values[i] == PENDING_WIN) {
+						table.values[i] = Tablebase.WIN;
+					}
+					if (table.values[i] == Tablebase.WIN || table.values[i] == Tablebase.LOSS) {
+						maxDistance = Math.max(maxDistance,
+								takeBack(table, i, tables[previous], counters[previous]));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates all boards of the previous table, whose turn can lead to the
+	 * given board without capturing.
+	 *
+	 * @return the highest distance that was set.
+	 */
+	private int takeBack(Tablebase table, int index, Tablebase previous, short[] counters) {
+		table.index.unrank(index, cells);
+		if (getFinishedValue(table.getSignature(), cells) != Tablebase.UNKNOWN) {
+			// reached by winning moves, which were found in the first step
+			return 0;
+		}
+		// the player before is the current one of this board
+		PhwarBoard board = toBoard(table.getSignature(), cells, true);
+		if (MoveGenerator.hasAnyCapture(board)) {
+			// he would have been forced to capture
+			return 0;
+		}
+		BitBoard bitBoard = board.getBitBoard();
+		previous.index.read(bitBoard, 0, otherCells);
+		int count = 0;
+		if (!MoveGenerator.hasAnyMove(board)) {
+			neighbours[count++] = previous.index.rank(otherCells);
+		}
+		for (int k = 0; k < otherCells.length; k++) {
+			if (previous.getSignature().getPlayer(k) != 0) {
+				continue;
+			}
+			int cell = otherCells[k];
+			for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+				// moves are reversible, so the particle came from one of its own targets
+				int[] ray = geometry.getRay(cell, dir);
+				int range = geometry.getMoveRange(cell, dir);
+				for (int j = 0; j < range && !bitBoard.isOccupied(ray[j]); j++) {
+					otherCells[k] = ray[j];
+					neighbours[count++] = previous.index.rank(otherCells);
+				}
+			}
+			otherCells[k] = cell;
+		}
+		count = removeDuplicates(count);
+
+		boolean lost = table.values[index] == Tablebase.LOSS;
+		int distance = table.distances[index] + 1;
+		int maxDistance = 0;
+		for (int i = 0; i < count; i++) {
+			int before = neighbours[i];
+			byte value = previous.values[before];
+			if (value == Tablebase.WIN || value == Tablebase.LOSS) {
+				continue;
+			}
+			if (lost) {
+				if (value == PENDING_WIN && previous.distances[before] <= distance) {
+					continue;
+				}
+				previous.values[before] = Tablebase.WIN;
+				previous.distances[before] = toDistance(distance);
+				maxDistance = distance;
+			} else if (counters[before] != CANNOT_LOSE) {
+				previous.distances[before] = toDistance(Math.max(previous.distances[before], distance));
+				if (--counters[before] == 0) {
+					previous.values[before] = Tablebase.LOSS;
+					maxDistance = Math.max(maxDistance, previous.distances[before]);
+				}
+			}
+		}
+		return maxDistance;
+	}
+
+	/**
+	 * @return {@link Tablebase#WIN} or {@link Tablebase#LOSS} if a neutron is
+	 *         on the center, otherwise {@link Tablebase#UNKNOWN}.
+	 */
+	private int getFinishedValue(MaterialSignature signature, int[] cells) {
+		for (int i = 0; i < cells.length; i++) {
+			if (signature.getCharge(i) == 0 && cells[i] == geometry.getCenterCell()) {
+				return signature.getPlayer(i) == 0 ? Tablebase.WIN : Tablebase.LOSS;
+			}
+		}
+		return Tablebase.UNKNOWN;
+	}
+
+	/**
+	 * @param swapped
+	 *            true to make the second player of the signature the current
+	 *            one.
+	 */
+	private PhwarBoard toBoard(MaterialSignature signature, int[] cells, boolean swapped) {
+		List<Particle> particles = new ArrayList<>(cells.length);
+		for (int i = 0; i < cells.length; i++) {
+			int player = swapped ? 1 - signature.getPlayer(i) : signature.getPlayer(i);
+			particles.add(new Particle(player, signature.getCharge(i), geometry.getPosX(cells[i]),
+					geometry.getPosY(cells[i])));
+		}
+		return new PhwarBoard(geometry.getSize(), 2, particles);
+	}
+
+	/**
+	 * Sorts the first indices of {@link #neighbours} and removes duplicates.
+	 *
+	 * @return amount of different indices.
+	 */
+	private int removeDuplicates(int count) {
+		Arrays.sort(neighbours, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || neighbours[distinct - 1] != neighbours[i]) {
+				neighbours[distinct++] = neighbours[i];
+			}
+		}
+		return distinct;
+	}
+
+	private static short toDistance(int distance) {
+		if (distance > Short.MAX_VALUE) {
+			throw new IllegalStateException("Distance too long: " + distance);
+		}
+		return (short) distance;
+	}
+
+	/**
+	 * Arguments: size of the board, the signature like "111v111", and
+	 * optionally a directory to write all solved tablebases to, as
+	 * {@link TablebaseFile} with distances.
+	 */
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		MaterialSignature signature = MaterialSignature.parse(args.length > 1 ? args[1] : "111v111");
+		long start = System.currentTimeMillis();
+		RetrogradeSolver solver = new RetrogradeSolver(size);
+		Tablebase table = solver.solve(signature);
+		System.out.println(table + ". Time needed: " + (System.currentTimeMillis() - start));
+		if (!signature.isSymmetric()) {
+			System.out.println(solver.solve(signature.swap()));
+		}
+		if (args.length > 2) {
+			Path directory = Files.createDirectories(Paths.get(args[2]));
+			for (Tablebase solvedTable : solver.getSolved()) {
+				TablebaseFile.write(solvedTable, directory.resolve(TablebaseFile.getFileName(solvedTable)), true);
+			}
+			System.out.println("Wrote " + solver.getSolved().size() + " tablebases to " + directory);
+		}
+	}
+}
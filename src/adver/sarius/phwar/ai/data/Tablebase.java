@@ -0,0 +1,124 @@
+package adver.sarius.phwar.ai.data;
+
+import adver.sarius.phwar.model.BoardGeometry;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * The perfect result of every board with one {@link MaterialSignature},
+ * computed by the {@link RetrogradeSolver}. For each board it knows if the
+ * current player wins, loses or if the game goes on forever with perfect play,
+ * and how many turns it takes to end the game.
+ * <p>
+ * The results are stored by the index of {@link TablebaseIndex}, so the
+ * boards themselves don't need to be stored.
+ */
+public class Tablebase {
+
+	/** The board is not valid, or not solved yet. */
+	public static final int UNKNOWN = 0;
+	/** The current player can force a win. */
+	public static final int WIN = 1;
+	/** The other player can force a win. */
+	public static final int LOSS = 2;
+	/** Neither player can force a win, so the game never ends. */
+	public static final int DRAW = 3;
+
+	private final MaterialSignature signature;
+	private final BoardGeometry geometry;
+	final TablebaseIndex index;
+	/** Result of each board, see {@link #WIN} and so on. */
+	final byte[] values;
+	/** Turns until the game ends, for won and lost boards. */
+	final short[] distances;
+	private final int[] cells;
+
+	/**
+	 * Creates an empty tablebase, where every board is {@link #UNKNOWN}.
+	 *
+	 * @param signature
+	 *            the particles of the boards.
+	 * @param geometry
+	 *            the geometry of the boards.
+	 */
+	Tablebase(MaterialSignature signature, BoardGeometry geometry) {
+		this.signature = signature;
+		this.geometry = geometry;
+		this.index = new TablebaseIndex(signature, geometry);
+		this.values = new byte[index.size()];
+		this.distances = new short[index.size()];
+		this.cells = new int[signature.getParticleCount()];
+	}
+
+	/**
+	 * @return the particles of the boards.
+	 */
+	public MaterialSignature getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return size of the boards.
+	 */
+	public int getBoardSize() {
+		return geometry.getSize();
+	}
+
+	/**
+	 * @return amount of indices, including the ones of invalid boards.
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Finds the index of a board. Not thread safe.
+	 *
+	 * @param board
+	 *            a board at the start of a turn.
+	 * @return the index of the board, or -1 if it has another size or
+	 *         signature.
+	 */
+	public int indexOf(PhwarBoard board) {
+		if (board.getSize() != geometry.getSize() || !signature.equals(MaterialSignature.of(board))) {
+			return -1;
+		}
+		index.read(board.getBitBoard(), board.getCurrentPlayer(), cells);
+		return index.rank(cells);
+	}
+
+	/**
+	 * @param index
+	 *            index of the board.
+	 * @return {@link #WIN}, {@link #LOSS}, {@link #DRAW} or {@link #UNKNOWN}
+	 *         for invalid boards.
+	 */
+	public int getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @param index
+	 *            index of the board.
+	 * @return amount of turns of both players until the winner has won, with
+	 *         perfect play of both. The own turn counts as 1, so a won board has
+	 *         an odd distance. Boards where a neutron already is on the center
+	 *         have distance 0. Is 0 for draws.
+	 */
+	public int getDistance(int index) {
+		return distances[index];
+	}
+
+	@Override
+	public String toString() {
+		int[] counts = new int[4];
+		int longest = 0;
+		for (int i = 0; i < values.length; i++) {
+			counts[values[i]]++;
+			if (values[i] == WIN) {
+				longest = Math.max(longest, distances[i]);
+			}
+		}
+		return signature + " on size " + geometry.getSize() + ": " + counts[WIN] + " wins, " + counts[LOSS]
+				+ " losses, " + counts[DRAW] + " draws. Longest win: " + longest + " turns";
+	}
+}
@@ -0,0 +1,262 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import adver.sarius.phwar.model.BoardGeometry;
+
+/**
+ * A {@link Tablebase} stored in a file, that is mapped into memory instead of
+ * read. So opening it costs almost nothing, only the parts that are probed get
+ * loaded, and multiple programs probing the same file share the memory.
+ * <p>
+ * The results are stored with 2 bits per board, 4 boards per byte, optionally
+ * followed by 1 byte per board for the distance. Since most boards of a
+ * signature have the same result, the results are split into blocks of
+ * {@link #BLOCK_BOARDS} boards, and each block is compressed on its own. So
+ * probing a board only needs to decompress its block. The file consists of:
+ * <ul>
+ * <li>A header with {@link #MAGIC}, {@link #VERSION}, the board size, the 6
+ * counts of the signature as bytes, 1 if the distances are stored or
+ * otherwise 0 as byte, the amount of boards and the amount of blocks.</li>
+ * <li>The block index with the position of each block in the file as long,
+ * followed by the end of the last block.</li>
+ * <li>The compressed blocks.</li>
+ * </ul>
+ * Instances are thread safe, but the decompressed blocks are kept by the
+ * {@link TablebaseProber} of each thread.
+ */
+public final class TablebaseFile {
+
+	/** First int of every tablebase file. */
+	public static final int MAGIC = 0x50544231;
+	/** Version of the file format. */
+	public static final int VERSION = 1;
+	/** Ending of the file names. */
+	public static final String EXTENSION = ".tb";
+	/** Amount of boards in each compressed block. Multiple of 4. */
+	public static final int BLOCK_BOARDS = 1 << 12;
+	/** Stored distance of all distances that don't fit into a byte. */
+	public static final int MAX_DISTANCE = 255;
+
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 6 + 1 + 4 + 4;
+
+	private final ByteBuffer buffer;
+	private final MaterialSignature signature;
+	private final BoardGeometry geometry;
+	private final boolean distances;
+	private final int size;
+	private final int blockCount;
+
+	private TablebaseFile(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a tablebase");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported tablebase version " + buffer.getInt(4));
+		}
+		this.geometry = BoardGeometry.of(buffer.getInt(8));
+		int[] own = { buffer.get(12), buffer.get(13), buffer.get(14) };
+		int[] other = { buffer.get(15), buffer.get(16), buffer.get(17) };
+		try {
+			this.signature = new MaterialSignature(own, other);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt tablebase", e);
+		}
+		this.distances = buffer.get(18) != 0;
+		this.size = buffer.getInt(19);
+		this.blockCount = buffer.getInt(23);
+		if (size < 0 || blockCount != (size + BLOCK_BOARDS - 1) / BLOCK_BOARDS
+				|| getBlockStart(blockCount) != buffer.capacity()) {
+			throw new IOException("Corrupt tablebase");
+		}
+	}
+
+	/**
+	 * Maps the tablebase file into memory.
+	 *
+	 * @param path
+	 *            the file written by {@link #write(Tablebase, Path, boolean)}.
+	 * @return the tablebase.
+	 * @throws IOException
+	 *             if the file can't be read or is no valid tablebase.
+	 */
+	public static TablebaseFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping stays valid after closing the channel
+			return new TablebaseFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param table
+	 *            a solved tablebase.
+	 * @return the usual name of its file, for example "111v111-2.tb".
+	 */
+	public static String getFileName(Tablebase table) {
+		return table.getSignature() + "-" + table.getBoardSize() + EXTENSION;
+	}
+
+	/**
+	 * Writes the results of a tablebase into a new file. Replaces any existing
+	 * file.
+	 *
+	 * @param table
+	 *            the solved tablebase.
+	 * @param path
+	 *            the file to write.
+	 * @param withDistances
+	 *            true to also store the distances, which makes the file bigger.
+	 * @throws IOException
+	 *             if the file can't be written.
+	 */
+	public static void write(Tablebase table, Path path, boolean withDistances) throws IOException {
+		int size = table.size();
+		int blockCount = (size + BLOCK_BOARDS - 1) / BLOCK_BOARDS;
+		MaterialSignature signature = table.getSignature();
+		byte[] block = new byte[getBlockBytes(withDistances)];
+		byte[][] compressed = new byte[blockCount][];
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		byte[] output = new byte[block.length + 64];
+		for (int b = 0; b < blockCount; b++) {
+			Arrays.fill(block, (byte) 0);
+			int first = b * BLOCK_BOARDS;
+			int end = Math.min(size, first + BLOCK_BOARDS);
+			for (int i = first; i < end; i++) {
+				int offset = i - first;
+				block[offset >> 2] |= table.getValue(i) << ((offset & 3) * 2);
+				if (withDistances) {
+					block[BLOCK_BOARDS / 4 + offset] = (byte) Math.min(MAX_DISTANCE, table.getDistance(i));
+				}
+			}
+			deflater.reset();
+			deflater.setInput(block);
+			deflater.finish();
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == output.length) {
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+				length += deflater.deflate(output, length, output.length - length);
+			}
+			compressed[b] = Arrays.copyOf(output, length);
+		}
+		deflater.end();
+
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(table.getBoardSize());
+			for (int player = 0; player < 2; player++) {
+				for (int charge = -1; charge <= 1; charge++) {
+					out.writeByte(signature.getCount(player, charge));
+				}
+			}
+			out.writeBoolean(withDistances);
+			out.writeInt(size);
+			out.writeInt(blockCount);
+			long position = HEADER_BYTES + (blockCount + 1) * 8L;
+			for (byte[] data : compressed) {
+				out.writeLong(position);
+				position += data.length;
+			}
+			out.writeLong(position);
+			for (byte[] data : compressed) {
+				out.write(data);
+			}
+		}
+	}
+
+	/**
+	 * @return size of the decompressed blocks in bytes.
+	 */
+	static int getBlockBytes(boolean withDistances) {
+		return BLOCK_BOARDS / 4 + (withDistances ? BLOCK_BOARDS : 0);
+	}
+
+	/**
+	 * @return the particles of the boards.
+	 */
+	public MaterialSignature getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return the geometry of the boards.
+	 */
+	public BoardGeometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * @return true if the distances are stored.
+	 */
+	public boolean hasDistances() {
+		return distances;
+	}
+
+	/**
+	 * @return amount of boards, see {@link Tablebase#size()}.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private long getBlockStart(int block) {
+		return buffer.getLong(HEADER_BYTES + block * 8);
+	}
+
+	/**
+	 * Decompresses one block.
+	 *
+	 * @param block
+	 *            number of the block, the index of the board divided by
+	 *            {@link #BLOCK_BOARDS}.
+	 * @param inflater
+	 *            the inflater to use, will be reset.
+	 * @param compressed
+	 *            buffer for the compressed bytes, might be too small.
+	 * @param target
+	 *            gets the decompressed block, with
+	 *            {@link #getBlockBytes(boolean)} bytes.
+	 * @return the buffer for the compressed bytes, or a bigger one if it was too
+	 *         small.
+	 * @throws IllegalStateException
+	 *             if the block is corrupt.
+	 */
+	byte[] readBlock(int block, Inflater inflater, byte[] compressed, byte[] target) {
+		int start = (int) getBlockStart(block);
+		int length = (int) (getBlockStart(block + 1) - start);
+		if (compressed.length < length) {
+			compressed = new byte[length];
+		}
+		// absolute reads, so multiple threads can use the same buffer
+		for (int i = 0; i < length; i++) {
+			compressed[i] = buffer.get(start + i);
+		}
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int done = 0;
+			while (done < target.length && !inflater.finished()) {
+				done += inflater.inflate(target, done, target.length - done);
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupt tablebase block " + block, e);
+		}
+		return compressed;
+	}
+}
@@ -0,0 +1,309 @@
+package adver.sarius.phwar.ai.data;
+
+import java.util.Arrays;
+
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.BoardGeometry;
+
+/**
+ * Numbers all boards of one {@link MaterialSignature} from 0 to
+ * {@link #size()}, so their results can be stored in plain arrays without any
+ * keys. A board is given as the cell of each particle, in the order of the
+ * signature.
+ * <p>
+ * Particles with the same player and charge form a group. The cells of each
+ * group are numbered as combination out of the cells that the groups before
+ * left free, so it doesn't matter in which order the particles of a group are
+ * given, and no number is wasted for particles on the same cell. The numbers
+ * of all groups are combined like the digits of a number.
+ * <p>
+ * Boards that are rotations of each other get the same number: the board is
+ * rotated so that the first group gets the smallest number of all rotations.
+ * Only those smallest combinations of the first group are numbered, which
+ * leaves about a sixth of the boards. If the first group looks the same in
+ * multiple rotations, for example with a single particle on the center, the
+ * rotation with the smallest number of the whole board is used. The numbers
+ * of the other rotations are not used by any board, see
+ * {@link #unrank(int, int[])}.
+ * <p>
+ * Not thread safe, since it reuses its buffers.
+ */
+final class TablebaseIndex {
+
+	private final BoardGeometry geometry;
+	private final int size;
+	/** Number of the first particle with the same player and charge. */
+	private final int[] groupStarts;
+	/** Number of the first particle of each group, and the particle count at the end. */
+	private final int[] groups;
+	/** Amount of combinations of each group, with the cells of the groups before taken. */
+	private final int[] combinations;
+	/** Numbers of the combinations of the first group, that are the smallest of their rotations. */
+	private final int[] firstCombinations;
+	/** Binomial coefficients, indexed by n and k. */
+	private final long[][] binomials;
+	private final MaterialSignature signature;
+	private final int[] rotated;
+	private final int[] taken;
+	/** Cells of the groups before the one that is ranked, one bit per cell. */
+	private final long[] takenBits;
+	private final int[] ranks;
+
+	/**
+	 * @param signature
+	 *            the particles of the boards.
+	 * @param geometry
+	 *            the geometry of the boards.
+	 * @throws IllegalArgumentException
+	 *             if there are too many boards to number them with an int.
+	 */
+	TablebaseIndex(MaterialSignature signature, BoardGeometry geometry) {
+		this.signature = signature;
+		this.geometry = geometry;
+		int particles = signature.getParticleCount();
+		int cellCount = geometry.getCellCount();
+		this.rotated = new int[particles];
+		this.taken = new int[particles];
+		this.takenBits = new long[(cellCount + 63) / 64];
+		this.groupStarts = new int[particles];
+		int groupCount = 1;
+		for (int i = 1; i < particles; i++) {
+			boolean same = signature.getPlayer(i - 1) == signature.getPlayer(i)
+					&& signature.getCharge(i - 1) == signature.getCharge(i);
+			groupStarts[i] = same ? groupStarts[i - 1] : i;
+			if (!same) {
+				groupCount++;
+			}
+		}
+		this.groups = new int[groupCount + 1];
+		for (int i = 0, g = 0; i < particles; i++) {
+			if (groupStarts[i] == i) {
+				groups[g++] = i;
+			}
+		}
+		groups[groupCount] = particles;
+
+		this.binomials = new long[cellCount + 1][particles + 1];
+		for (int n = 0; n <= cellCount; n++) {
+			binomials[n][0] = 1;
+			for (int k = 1; k <= Math.min(n, particles); k++) {
+				binomials[n][k] = binomials[n - 1][k - 1] + (k < n ? binomials[n - 1][k] : 0);
+			}
+		}
+		this.combinations = new int[groupCount];
+		int free = cellCount;
+		for (int g = 0; g < groupCount; g++) {
+			int length = groups[g + 1] - groups[g];
+			if (binomials[free][length] > Integer.MAX_VALUE) {
+				throw tooManyBoards();
+			}
+			combinations[g] = (int) binomials[free][length];
+			free -= length;
+		}
+		this.firstCombinations = findFirstCombinations();
+
+		long boards = firstCombinations.length;
+		for (int g = 1; g < groupCount; g++) {
+			boards *= combinations[g];
+			if (boards > Integer.MAX_VALUE) {
+				throw tooManyBoards();
+			}
+		}
+		this.size = (int) boards;
+		this.ranks = new int[groupCount];
+	}
+
+	private IllegalArgumentException tooManyBoards() {
+		return new IllegalArgumentException("Too many boards for " + signature + " with size " + geometry.getSize());
+	}
+
+	/**
+	 * @return all combinations of the first group that are the smallest of their
+	 *         rotations, sorted.
+	 */
+	private int[] findFirstCombinations() {
+		int length = groups[1];
+		int[] cells = new int[length];
+		int[] result = new int[combinations[0]];
+		int count = 0;
+		for (int combination = 0; combination < combinations[0]; combination++) {
+			unrankCombination(combination, length, cells, 0, 0);
+			boolean smallest = true;
+			for (int rot = 1; rot < 6 && smallest; rot++) {
+				for (int i = 0; i < length; i++) {
+					rotated[i] = geometry.rotate(cells[i], rot);
+				}
+				Arrays.sort(rotated, 0, length);
+				smallest = rankCombination(rotated, 0, length) >= combination;
+			}
+			if (smallest) {
+				result[count++] = combination;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @return amount of numbers. Some of them might not be used, see
+	 *         {@link #unrank(int, int[])}.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param cells
+	 *            the cell of each particle. Particles with the same player and
+	 *            charge may be in any order. Is not modified.
+	 * @return the number of the board and all its rotations.
+	 */
+	int rank(int[] cells) {
+		long best = Long.MAX_VALUE;
+		for (int rot = 0; rot < 6; rot++) {
+			Arrays.fill(takenBits, 0);
+			// most rotations are skipped by the first group alone
+			int first = Arrays.binarySearch(firstCombinations, rankGroup(cells, 0, rot));
+			if (first < 0) {
+				continue;
+			}
+			long index = first;
+			for (int g = 1; g + 1 < groups.length; g++) {
+				index = index * combinations[g] + rankGroup(cells, g, rot);
+			}
+			best = Math.min(best, index);
+		}
+		return (int) best;
+	}
+
+	/**
+	 * Rotates and numbers the cells of one group, and marks them as taken for
+	 * the following groups.
+	 */
+	private int rankGroup(int[] cells, int group, int rotations) {
+		int start = groups[group];
+		int end = groups[group + 1];
+		for (int i = start; i < end; i++) {
+			// insertion sort, since the groups are tiny
+			int cell = geometry.rotate(cells[i], rotations);
+			int j = i;
+			for (; j > start && rotated[j - 1] > cell; j--) {
+				rotated[j] = rotated[j - 1];
+			}
+			rotated[j] = cell;
+		}
+		int rank = rankCombination(rotated, start, end);
+		for (int i = start; i < end; i++) {
+			takenBits[rotated[i] >>> 6] |= 1L << rotated[i];
+		}
+		return rank;
+	}
+
+	/**
+	 * Numbers the cells from start to end of the sorted array as combination
+	 * of the cells that are not marked as taken.
+	 */
+	private int rankCombination(int[] sortedCells, int start, int end) {
+		long rank = 0;
+		for (int i = start; i < end; i++) {
+			int cell = sortedCells[i];
+			// number of the cell among the free ones
+			rank += binomials[cell - countTaken(cell)][i - start + 1];
+		}
+		return (int) rank;
+	}
+
+	/**
+	 * @return amount of taken cells below the cell.
+	 */
+	private int countTaken(int cell) {
+		int word = cell >>> 6;
+		int count = Long.bitCount(takenBits[word] & ((1L << cell) - 1));
+		for (int i = 0; i < word; i++) {
+			count += Long.bitCount(takenBits[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Reverse of {@link #rankCombination(int[], int, int, int)}.
+	 */
+	private void unrankCombination(long rank, int length, int[] cells, int start, int takenCount) {
+		System.arraycopy(cells, 0, taken, 0, takenCount);
+		Arrays.sort(taken, 0, takenCount);
+		int free = geometry.getCellCount() - takenCount;
+		for (int k = length; k >= 1; k--) {
+			int position = free - 1;
+			while (binomials[position][k] > rank) {
+				position--;
+			}
+			rank -= binomials[position][k];
+			free = position;
+			cells[start + k - 1] = position;
+		}
+		// from the numbers among the free cells to the real cells
+		for (int i = start; i < start + length; i++) {
+			int cell = cells[i];
+			for (int t = 0; t < takenCount; t++) {
+				if (taken[t] <= cell) {
+					cell++;
+				}
+			}
+			cells[i] = cell;
+		}
+	}
+
+	/**
+	 * @param index
+	 *            the number of the board.
+	 * @param cells
+	 *            gets the cell of each particle.
+	 * @return false if the number is not used by any board, since the board
+	 *         gets a smaller number in another rotation.
+	 */
+	boolean unrank(int index, int[] cells) {
+		int rest = index;
+		for (int g = groups.length - 2; g >= 1; g--) {
+			ranks[g] = rest % combinations[g];
+			rest /= combinations[g];
+		}
+		ranks[0] = firstCombinations[rest];
+		for (int g = 0; g + 1 < groups.length; g++) {
+			unrankCombination(ranks[g], groups[g + 1] - groups[g], cells, groups[g], groups[g]);
+		}
+		return rank(cells) == index;
+	}
+
+	/**
+	 * Reads the cells of the particles from a board with the signature.
+	 *
+	 * @param bitBoard
+	 *            the particles of the board.
+	 * @param currentPlayer
+	 *            the player that is first in the signature.
+	 * @param cells
+	 *            gets the cell of each particle.
+	 */
+	void read(BitBoard bitBoard, int currentPlayer, int[] cells) {
+		// next free number of each group, starting at the first one
+		int[] next = rotated;
+		for (int i = 0; i < cells.length; i++) {
+			next[i] = groupStarts[i];
+		}
+		for (int cell = bitBoard.nextOccupied(0); cell >= 0; cell = bitBoard.nextOccupied(cell + 1)) {
+			int player = bitBoard.getParticle(cell).getPlayer() == currentPlayer ? 0 : 1;
+			int charge = bitBoard.getParticle(cell).getCharge();
+			int particle = findGroup(player, charge);
+			cells[next[particle]++] = cell;
+		}
+	}
+
+	private int findGroup(int player, int charge) {
+		for (int g = 0; g + 1 < groups.length; g++) {
+			int first = groups[g];
+			if (signature.getPlayer(first) == player && signature.getCharge(first) == charge) {
+				return first;
+			}
+		}
+		throw new IllegalArgumentException("The board doesn't match " + signature);
+	}
+}
@@ -0,0 +1,210 @@
+package adver.sarius.phwar.ai.data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import adver.sarius.phwar.model.BitBoard;
+import adver.sarius.phwar.model.PhwarBoard;
+
+/**
+ * Looks up boards in {@link TablebaseFile}s. Meant to be called by the search
+ * for every board with only a few particles left, so a probe doesn't create
+ * any objects, and the last {@link #CACHED_BLOCKS} decompressed blocks of each
+ * file are kept.
+ * <p>
+ * Thread safe: each thread gets its own indices and decompressed blocks, while
+ * the mapped files are shared.
+ */
+public class TablebaseProber {
+
+	/** Returned by {@link #probe(PhwarBoard)} if there is no tablebase for the board. */
+	public static final int NOT_FOUND = -1;
+	/** Amount of decompressed blocks kept for each file. Power of 2. */
+	public static final int CACHED_BLOCKS = 16;
+
+	private final TablebaseFile[] files;
+	/** Board size and signature of each file, see {@link #getKey(int, int[])}. */
+	private final int[] keys;
+	private final int maxParticles;
+	private final ThreadLocal<Reader> readers = ThreadLocal.withInitial(Reader::new);
+
+	/**
+	 * @param files
+	 *            the tablebases to probe.
+	 */
+	public TablebaseProber(Collection<TablebaseFile> files) {
+		this.files = files.toArray(new TablebaseFile[files.size()]);
+		this.keys = new int[this.files.length];
+		int max = 0;
+		int[] counts = new int[6];
+		for (int i = 0; i < this.files.length; i++) {
+			MaterialSignature signature = this.files[i].getSignature();
+			for (int charge = -1; charge <= 1; charge++) {
+				counts[charge + 1] = signature.getCount(0, charge);
+				counts[charge + 4] = signature.getCount(1, charge);
+			}
+			keys[i] = getKey(this.files[i].getGeometry().getSize(), counts);
+			max = Math.max(max, signature.getParticleCount());
+		}
+		this.maxParticles = max;
+	}
+
+	/**
+	 * Maps all tablebase files of a directory.
+	 *
+	 * @param directory
+	 *            the directory with the files ending with
+	 *            {@link TablebaseFile#EXTENSION}.
+	 * @return the prober for all the files, or null if the directory doesn't
+	 *         exist.
+	 * @throws IOException
+	 *             if a file can't be read or is no valid tablebase.
+	 */
+	public static TablebaseProber open(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return null;
+		}
+		List<TablebaseFile> files = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + TablebaseFile.EXTENSION)) {
+			for (Path path : paths) {
+				files.add(TablebaseFile.open(path));
+			}
+		}
+		return new TablebaseProber(files);
+	}
+
+	/**
+	 * @return the most particles of any tablebase. Boards with more particles
+	 *         don't need to be probed.
+	 */
+	public int getMaxParticles() {
+		return maxParticles;
+	}
+
+	/**
+	 * @param probe
+	 *            result of {@link #probe(PhwarBoard)}.
+	 * @return {@link Tablebase#WIN}, {@link Tablebase#LOSS} or
+	 *         {@link Tablebase#DRAW} for the current player.
+	 */
+	public static int getValue(int probe) {
+		return probe & 3;
+	}
+
+	/**
+	 * @param probe
+	 *            result of {@link #probe(PhwarBoard)}.
+	 * @return amount of turns until the game ends, see
+	 *         {@link Tablebase#getDistance(int)}. Is
+	 *         {@link TablebaseFile#MAX_DISTANCE} for longer distances, and if the
+	 *         file has no distances.
+	 */
+	public static int getDistance(int probe) {
+		return probe >>> 2;
+	}
+
+	/**
+	 * Looks up the result of a board.
+	 *
+	 * @param board
+	 *            a board at the start of a turn, that is not won yet.
+	 * @return the result, to be read with {@link #getValue(int)} and
+	 *         {@link #getDistance(int)}, or {@link #NOT_FOUND}.
+	 */
+	public int probe(PhwarBoard board) {
+		if (board.getActivePlayerCount() != 2) {
+			return NOT_FOUND;
+		}
+		BitBoard bitBoard = board.getBitBoard();
+		int current = board.getCurrentPlayer();
+		Reader reader = readers.get();
+		int[] counts = reader.counts;
+		int other = -1;
+		for (int player = 0; player < bitBoard.getPlayerCount(); player++) {
+			if (player != current && bitBoard.countParticles(player) > 0) {
+				other = player;
+			}
+		}
+		if (other < 0 || bitBoard.countParticles() != bitBoard.countParticles(current)
+				+ bitBoard.countParticles(other)) {
+			return NOT_FOUND;
+		}
+		for (int charge = -1; charge <= 1; charge++) {
+			counts[charge + 1] = bitBoard.countParticles(current, charge);
+			counts[charge + 4] = bitBoard.countParticles(other, charge);
+		}
+		int key = getKey(board.getSize(), counts);
+		int file = 0;
+		while (file < keys.length && keys[file] != key) {
+			file++;
+		}
+		if (file == keys.length) {
+			return NOT_FOUND;
+		}
+		return reader.probe(file, bitBoard, current);
+	}
+
+	private static int getKey(int size, int[] counts) {
+		int key = size;
+		for (int count : counts) {
+			if (count > 15) {
+				return -1;
+			}
+			key = key << 4 | count;
+		}
+		return key;
+	}
+
+	/**
+	 * The buffers of one thread.
+	 */
+	private class Reader {
+		private final int[] counts = new int[6];
+		private final TablebaseIndex[] indices = new TablebaseIndex[files.length];
+		private final int[][] cells = new int[files.length][];
+		/**
+		 * Numbers of the decompressed blocks of each file, or -1. Each block can
+		 * only be kept at the position of its number modulo CACHED_BLOCKS.
+		 */
+		private final int[][] blockNumbers = new int[files.length][];
+		private final byte[][][] blocks = new byte[files.length][][];
+		private final Inflater inflater = new Inflater();
+		private byte[] compressed = new byte[1024];
+
+		private int probe(int file, BitBoard bitBoard, int current) {
+			TablebaseFile table = files[file];
+			if (indices[file] == null) {
+				// created when needed, since the index of big tables takes some time
+				indices[file] = new TablebaseIndex(table.getSignature(), table.getGeometry());
+				cells[file] = new int[table.getSignature().getParticleCount()];
+				blockNumbers[file] = new int[CACHED_BLOCKS];
+				Arrays.fill(blockNumbers[file], -1);
+				blocks[file] = new byte[CACHED_BLOCKS][TablebaseFile.getBlockBytes(table.hasDistances())];
+			}
+			indices[file].read(bitBoard, current, cells[file]);
+			int index = indices[file].rank(cells[file]);
+			int blockNumber = index / TablebaseFile.BLOCK_BOARDS;
+			int slot = blockNumber & (CACHED_BLOCKS - 1);
+			byte[] block = blocks[file][slot];
+			if (blockNumbers[file][slot] != blockNumber) {
+				compressed = table.readBlock(blockNumber, inflater, compressed, block);
+				blockNumbers[file][slot] = blockNumber;
+			}
+			int offset = index % TablebaseFile.BLOCK_BOARDS;
+			int value = block[offset >> 2] >> ((offset & 3) * 2) & 3;
+			if (value == Tablebase.UNKNOWN) {
+				return NOT_FOUND;
+			}
+			int distance = table.hasDistances() ? block[TablebaseFile.BLOCK_BOARDS / 4 + offset] & 0xFF
+					: TablebaseFile.MAX_DISTANCE;
+			return distance << 2 | value;
+		}
+	}
+}
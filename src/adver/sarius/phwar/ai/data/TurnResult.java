@@ -13,7 +13,8 @@ public class TurnResult {
 	public int winInTurns = 1;
 	public double rating = 1000000;
 	public double oneTurnBonusRating = 0;
-	public Set<String> insideLoops = new HashSet<>();
+	/** Canonical hashes of the boards this result depends on. */
+	public Set<Long> insideLoops = new HashSet<>();
 
 	public TurnResult() {
 
@@ -23,9 +24,11 @@ public class TurnResult {
 		StringBuilder builder = new StringBuilder();
 		builder.append(';').append(rating).append(';').append(winInTurns).append(';').append(oneTurnBonusRating)
 				.append(';').append(move).append(';');
-		captures.forEach(m -> builder.append(m).append('#'));
+		if (captures != null) {
+			captures.forEach(m -> builder.append(m).append('#'));
+		}
 		// format:
-		// particles;rating;winInRounds;bonusRating;x/y>X/Y;capx/capy>capX/capY#caps...
+		// positionKey;rating;winInRounds;bonusRating;x/y>X/Y;capx/capy>capX/capY#caps...
 
 		return builder.toString();
 	}
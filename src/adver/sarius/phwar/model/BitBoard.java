@@ -0,0 +1,463 @@
+package adver.sarius.phwar.model;
+
+import java.util.Arrays;
+
+/**
+ * Cell indexed storage of all particles on a hexagon board. Every cell of the
+ * board gets its own index, and the occupancy is stored as bit masks for every
+ * player and every charge. This way a cell can be looked up in constant time,
+ * instead of searching through all the particles.
+ */
+public class BitBoard {
+
+	/** Precomputed cell tables of the board. */
+	private final BoardGeometry geometry;
+	/** Amount of longs needed to store one bit for every cell. */
+	private final int words;
+	/** Bit set for every occupied cell. */
+	private final long[] occupied;
+	/** Bit set for every cell occupied by a particle of the player. */
+	private long[][] players;
+	/** Bit set for every cell occupied by a particle with the charge + 1. */
+	private final long[][] charges;
+	/** The particle on each cell, or null if the cell is empty. */
+	private final Particle[] cells;
+	/** Precomputed hash keys for the size of the board. */
+	private final Zobrist zobrist;
+	/** Xor of the keys of all particles. */
+	private long hash;
+	/**
+	 * Xor of the keys of all particles of one player, after rotating the board
+	 * and renaming the player. Indexed by (rotation * P + player) * P + renamed
+	 * player, with P being the amount of player masks.
+	 */
+	private long[] rotatedHashes;
+	/** The particles each particle can see. */
+	private SightMap sightMap;
+	/** Sum of the distances of the neutrons of each player to the center. */
+	private int[] neutronDistances;
+	/** Sum of the empty cells next to the particles of each player. */
+	private int[] freeNeighbours;
+
+	/**
+	 * Creates an empty board.
+	 *
+	 * @param geometry
+	 *            the cell tables for the size of the board.
+	 * @param playerCount
+	 *            amount of players, to preallocate their masks.
+	 */
+	public BitBoard(BoardGeometry geometry, int playerCount) {
+		this.geometry = geometry;
+		int count = geometry.getCellCount();
+		this.words = (count + 63) >>> 6;
+		this.occupied = new long[words];
+		this.players = new long[playerCount][words];
+		this.charges = new long[3][words];
+		this.cells = new Particle[count];
+		this.zobrist = Zobrist.of(geometry);
+		this.rotatedHashes = new long[6 * playerCount * playerCount];
+		this.sightMap = new SightMap(geometry, playerCount, cells);
+		this.neutronDistances = new int[playerCount];
+		this.freeNeighbours = new int[playerCount];
+	}
+
+	/**
+	 * Copy constructor. Also copies the particle Objects.
+	 *
+	 * @param bitBoard
+	 *            the board to copy everything from.
+	 */
+	public BitBoard(BitBoard bitBoard) {
+		this.geometry = bitBoard.geometry;
+		this.words = bitBoard.words;
+		this.occupied = bitBoard.occupied.clone();
+		this.players = new long[bitBoard.players.length][];
+		for (int i = 0; i < players.length; i++) {
+			players[i] = bitBoard.players[i].clone();
+		}
+		this.charges = new long[3][];
+		for (int i = 0; i < charges.length; i++) {
+			charges[i] = bitBoard.charges[i].clone();
+		}
+		this.cells = new Particle[bitBoard.cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			if (bitBoard.cells[i] != null) {
+				cells[i] = new Particle(bitBoard.cells[i]);
+			}
+		}
+		this.zobrist = bitBoard.zobrist;
+		this.hash = bitBoard.hash;
+		this.rotatedHashes = bitBoard.rotatedHashes.clone();
+		this.sightMap = new SightMap(bitBoard.sightMap);
+		this.neutronDistances = bitBoard.neutronDistances.clone();
+		this.freeNeighbours = bitBoard.freeNeighbours.clone();
+	}
+
+	/**
+	 * @return the cell tables of this board.
+	 */
+	public BoardGeometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return true if there is a particle on the cell.
+	 */
+	public boolean isOccupied(int cell) {
+		return (occupied[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return the particle on the cell, or null if it is empty.
+	 */
+	public Particle getParticle(int cell) {
+		return cells[cell];
+	}
+
+	/**
+	 * Searches for the next occupied cell, starting with the given one. Can be
+	 * used to iterate over all particles without creating any objects.
+	 *
+	 * @param fromCell
+	 *            index of the first cell to check.
+	 * @return index of the next occupied cell, or -1 if there is none left.
+	 */
+	public int nextOccupied(int fromCell) {
+		return nextSetBit(occupied, fromCell);
+	}
+
+	/**
+	 * Searches for the next cell occupied by the given player, starting with the
+	 * given one.
+	 *
+	 * @param player
+	 *            the owner of the particles to look for.
+	 * @param fromCell
+	 *            index of the first cell to check.
+	 * @return index of the next cell of that player, or -1 if there is none left.
+	 */
+	public int nextOccupied(int player, int fromCell) {
+		if (player < 0 || player >= players.length) {
+			return -1;
+		}
+		return nextSetBit(players[player], fromCell);
+	}
+
+	/**
+	 * @return amount of players with their own masks. Particles of higher
+	 *         players will add more masks.
+	 */
+	public int getPlayerCount() {
+		return players.length;
+	}
+
+	/**
+	 * @return amount of all particles on the board.
+	 */
+	public int countParticles() {
+		int count = 0;
+		for (long word : occupied) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @param player
+	 *            the owner of the particles to count.
+	 * @return amount of particles the player has on the board.
+	 */
+	public int countParticles(int player) {
+		if (player < 0 || player >= players.length) {
+			return 0;
+		}
+		int count = 0;
+		for (long word : players[player]) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @param player
+	 *            the owner of the particles to count.
+	 * @param charge
+	 *            the charge of the particles to count.
+	 * @return amount of particles with that charge the player has on the board.
+	 */
+	public int countParticles(int player, int charge) {
+		if (player < 0 || player >= players.length) {
+			return 0;
+		}
+		long[] playerMask = players[player];
+		long[] chargeMask = charges[charge + 1];
+		int count = 0;
+		for (int i = 0; i < words; i++) {
+			count += Long.bitCount(playerMask[i] & chargeMask[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Searches the first cell with a particle of the given player and charge.
+	 *
+	 * @param player
+	 *            the owner of the particle to look for.
+	 * @param charge
+	 *            the charge of the particle to look for.
+	 * @return index of the cell, or -1 if the player has no such particle.
+	 */
+	public int findParticle(int player, int charge) {
+		if (player < 0 || player >= players.length) {
+			return -1;
+		}
+		long[] playerMask = players[player];
+		long[] chargeMask = charges[charge + 1];
+		for (int i = 0; i < words; i++) {
+			long word = playerMask[i] & chargeMask[i];
+			if (word != 0) {
+				return (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param player
+	 *            the player to check.
+	 * @return true if the player owns at least 1 electron, positron, and neutron.
+	 */
+	public boolean hasAllCharges(int player) {
+		return findParticle(player, -1) >= 0 && findParticle(player, 0) >= 0 && findParticle(player, 1) >= 0;
+	}
+
+	/**
+	 * @return xor of the hash keys of all particles. Does not include the current
+	 *         player or state of the turn.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the hash of the particles of one player, as if the board would be
+	 * rotated and the player would have another number. The xor of these hashes
+	 * for all players is the hash of the whole rotated and renamed board.
+	 *
+	 * @param rotation
+	 *            number of rotations between 0 and 5, inclusive.
+	 * @param player
+	 *            the owner of the particles to hash.
+	 * @param renamed
+	 *            the number the player should have.
+	 * @return xor of the hash keys of the rotated and renamed particles.
+	 */
+	public long getRotatedHash(int rotation, int player, int renamed) {
+		if (player >= players.length || renamed >= players.length) {
+			return 0;
+		}
+		return rotatedHashes[(rotation * players.length + player) * players.length + renamed];
+	}
+
+	/**
+	 * @param player
+	 *            the owner of the neutrons.
+	 * @return sum of the distances of all neutrons of the player to the center.
+	 *         Kept up to date with every change, so it's as fast as a field.
+	 */
+	public int getNeutronDistance(int player) {
+		return player < 0 || player >= neutronDistances.length ? 0 : neutronDistances[player];
+	}
+
+	/**
+	 * @param player
+	 *            the owner of the particles.
+	 * @return sum of the empty cells next to each particle of the player. An
+	 *         empty cell next to 2 particles counts twice. Kept up to date with
+	 *         every change, so it's as fast as a field.
+	 */
+	public int getFreeNeighbours(int player) {
+		return player < 0 || player >= freeNeighbours.length ? 0 : freeNeighbours[player];
+	}
+
+	/**
+	 * @return the particles each particle can see. Should not be modified.
+	 */
+	public SightMap getSightMap() {
+		return sightMap;
+	}
+
+	/**
+	 * Puts the particle on the cell of its position. The cell has to be empty.
+	 *
+	 * @param particle
+	 *            the particle to put on the board.
+	 */
+	void place(Particle particle) {
+		int cell = geometry.getCell(particle.getPosX(), particle.getPosY());
+		if (particle.getPlayer() >= players.length) {
+			long[][] grown = Arrays.copyOf(players, particle.getPlayer() + 1);
+			for (int i = players.length; i < grown.length; i++) {
+				grown[i] = new long[words];
+			}
+			players = grown;
+			neutronDistances = Arrays.copyOf(neutronDistances, players.length);
+			freeNeighbours = Arrays.copyOf(freeNeighbours, players.length);
+			rehash();
+			// rebuilt with counters for the new player, and checked against the
+			// map that was updated with every particle
+			SightMap previous = sightMap;
+			sightMap = new SightMap(geometry, players.length, cells);
+			if (!sightMap.matches(previous)) {
+				throw new IllegalStateException("Rebuilt line of sight differs from the updated one");
+			}
+		}
+		cells[cell] = particle;
+		setBit(occupied, cell);
+		setBit(players[particle.getPlayer()], cell);
+		setBit(charges[particle.getCharge() + 1], cell);
+		toggleHash(cell, particle);
+		sightMap.add(cell, cells);
+		if (particle.getCharge() == 0) {
+			neutronDistances[particle.getPlayer()] += geometry.getCenterDistance(cell);
+		}
+		updateFreeNeighbours(cell, particle.getPlayer(), 1);
+	}
+
+	/**
+	 * Takes the particle from the cell.
+	 *
+	 * @param cell
+	 *            index of the occupied cell.
+	 * @return the removed particle.
+	 */
+	Particle remove(int cell) {
+		Particle particle = cells[cell];
+		sightMap.remove(cell, cells);
+		cells[cell] = null;
+		clearBit(occupied, cell);
+		clearBit(players[particle.getPlayer()], cell);
+		clearBit(charges[particle.getCharge() + 1], cell);
+		toggleHash(cell, particle);
+		if (particle.getCharge() == 0) {
+			neutronDistances[particle.getPlayer()] -= geometry.getCenterDistance(cell);
+		}
+		updateFreeNeighbours(cell, particle.getPlayer(), -1);
+		return particle;
+	}
+
+	/**
+	 * Only the cell and its up to 6 neighbours change, so the counts are updated
+	 * instead of counted again.
+	 *
+	 * @param cell
+	 *            index of the cell that got occupied or empty.
+	 * @param player
+	 *            the owner of the particle on the cell.
+	 * @param sign
+	 *            1 if the particle got placed, -1 if it got removed.
+	 */
+	private void updateFreeNeighbours(int cell, int player, int sign) {
+		int free = 0;
+		for (int neighbour : geometry.getNeighbours(cell)) {
+			Particle other = cells[neighbour];
+			if (other == null) {
+				free++;
+			} else {
+				// the cell next to that particle got occupied or empty
+				freeNeighbours[other.getPlayer()] -= sign;
+			}
+		}
+		freeNeighbours[player] += sign * free;
+	}
+
+	/**
+	 * Moves the particle from one cell to another, and updates its position.
+	 *
+	 * @param fromCell
+	 *            index of the occupied start cell.
+	 * @param toCell
+	 *            index of the empty target cell.
+	 */
+	void move(int fromCell, int toCell) {
+		Particle particle = remove(fromCell);
+		particle.setPos(geometry.getPosX(toCell), geometry.getPosY(toCell));
+		place(particle);
+	}
+
+	/**
+	 * Takes all particles of the given player from the board.
+	 *
+	 * @param player
+	 *            the owner of the particles to remove.
+	 */
+	void removePlayer(int player) {
+		for (int cell = nextOccupied(player, 0); cell >= 0; cell = nextOccupied(player, cell + 1)) {
+			remove(cell);
+		}
+	}
+
+	/**
+	 * Adds or removes the particle on the cell to or from all hashes.
+	 *
+	 * @param cell
+	 *            index of the cell the particle is on.
+	 * @param particle
+	 *            the particle to toggle.
+	 */
+	private void toggleHash(int cell, Particle particle) {
+		int player = particle.getPlayer();
+		int charge = particle.getCharge();
+		int playerCount = players.length;
+		hash ^= zobrist.getPieceKey(cell, player, charge);
+		for (int rot = 0; rot < 6; rot++) {
+			int rotated = geometry.rotate(cell, rot);
+			int index = (rot * playerCount + player) * playerCount;
+			for (int renamed = 0; renamed < playerCount; renamed++) {
+				rotatedHashes[index + renamed] ^= zobrist.getPieceKey(rotated, renamed, charge);
+			}
+		}
+	}
+
+	/**
+	 * Recomputes all hashes from scratch, needed after the amount of players
+	 * changed.
+	 */
+	private void rehash() {
+		hash = 0;
+		rotatedHashes = new long[6 * players.length * players.length];
+		for (int cell = nextOccupied(0); cell >= 0; cell = nextOccupied(cell + 1)) {
+			toggleHash(cell, cells[cell]);
+		}
+	}
+
+	private static void setBit(long[] mask, int bit) {
+		mask[bit >>> 6] |= 1L << bit;
+	}
+
+	private static void clearBit(long[] mask, int bit) {
+		mask[bit >>> 6] &= ~(1L << bit);
+	}
+
+	private static int nextSetBit(long[] mask, int fromBit) {
+		int i = fromBit >>> 6;
+		if (fromBit < 0 || i >= mask.length) {
+			return -1;
+		}
+		long word = mask[i] & (-1L << fromBit);
+		while (true) {
+			if (word != 0) {
+				return (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+			if (++i == mask.length) {
+				return -1;
+			}
+			word = mask[i];
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package adver.sarius.phwar.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed tables for the cells of a hexagon board with a given size. Every
+ * cell gets an index, and the rays in all 6 directions, the neighbours and the
+ * rotations are computed once, so nobody needs to do coordinate math while
+ * searching. The tables are shared between all boards of the same size, and
+ * must not be modified.
+ */
+public final class BoardGeometry {
+
+	/** Amount of directions you can look or move from each cell. */
+	public static final int DIRECTIONS = 6;
+	/**
+	 * Amount of symmetries of the board: 6 rotations, and each of them again
+	 * after mirroring.
+	 */
+	public static final int SYMMETRIES = 12;
+	/**
+	 * Steps in x and y for each direction. A direction xor 1 is the opposite
+	 * direction.
+	 */
+	private static final int[][] STEPS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 }, { 1, 1 }, { -1, -1 } };
+	/** Already computed geometries for each board size. */
+	private static final Map<Integer, BoardGeometry> CACHE = new ConcurrentHashMap<>();
+
+	/** Radius of the hexagon board. See {@link PhwarBoard#getSize()}. */
+	private final int size;
+	/** Width of the square around the hexagon, used to look up cell indices. */
+	private final int diameter;
+	/**
+	 * Cell index for every position of the square around the hexagon. -1 for
+	 * positions outside of the board.
+	 */
+	private final int[] cellIndex;
+	/** The x coordinate of every cell. */
+	private final int[] cellX;
+	/** The y coordinate of every cell. */
+	private final int[] cellY;
+	/** Index of the center cell 0/0. */
+	private final int centerCell;
+	/** Amount of steps from each cell to the center. */
+	private final int[] centerDistances;
+	/**
+	 * All cells in one direction until the border of the board, ordered by
+	 * distance. Indexed by cell * DIRECTIONS + direction.
+	 */
+	private final int[][] rays;
+	/**
+	 * How many cells of each ray can be reached by a move without skipping over
+	 * the center. Indexed like the rays.
+	 */
+	private final int[] moveRanges;
+	/** All directly surrounding cells of each cell. */
+	private final int[][] neighbours;
+	/** Index of each cell after rotating the board. Indexed by rotation, cell. */
+	private final int[][] rotations;
+	/**
+	 * Index of each cell after rotating or mirroring the board. Indexed by
+	 * symmetry, cell.
+	 */
+	private final int[][] symmetries;
+
+	/**
+	 * Returns the geometry for the given board size. It will only be computed
+	 * once per size.
+	 *
+	 * @param size
+	 *            radius of the hexagon board.
+	 * @return the shared geometry of that size.
+	 */
+	public static BoardGeometry of(int size) {
+		return CACHE.computeIfAbsent(size, BoardGeometry::new);
+	}
+
+	private BoardGeometry(int size) {
+		this.size = size;
+		this.diameter = 2 * size + 1;
+		this.cellIndex = new int[diameter * diameter];
+		Arrays.fill(cellIndex, -1);
+		int count = 3 * size * (size + 1) + 1;
+		this.cellX = new int[count];
+		this.cellY = new int[count];
+		int cell = 0;
+		for (int x = -size; x <= size; x++) {
+			for (int y = -size; y <= size; y++) {
+				if (Math.abs(x - y) <= size) {
+					cellIndex[(x + size) * diameter + y + size] = cell;
+					cellX[cell] = x;
+					cellY[cell] = y;
+					cell++;
+				}
+			}
+		}
+		this.centerCell = getCell(0, 0);
+		this.centerDistances = new int[count];
+		for (cell = 0; cell < count; cell++) {
+			centerDistances[cell] = Math.max(Math.max(Math.abs(cellX[cell]), Math.abs(cellY[cell])),
+					Math.abs(cellX[cell] - cellY[cell]));
+		}
+
+		this.rays = new int[count * DIRECTIONS][];
+		this.moveRanges = new int[count * DIRECTIONS];
+		this.neighbours = new int[count][];
+		int[] buffer = new int[diameter];
+		for (cell = 0; cell < count; cell++) {
+			int[] around = new int[DIRECTIONS];
+			int aroundCount = 0;
+			for (int dir = 0; dir < DIRECTIONS; dir++) {
+				int length = 0;
+				int range = -1;
+				int x = cellX[cell] + STEPS[dir][0];
+				int y = cellY[cell] + STEPS[dir][1];
+				for (int next = getCell(x, y); next >= 0; next = getCell(x, y)) {
+					buffer[length++] = next;
+					if (next == centerCell && range < 0) {
+						// may land on the center, but not skip over it
+						range = length;
+					}
+					x += STEPS[dir][0];
+					y += STEPS[dir][1];
+				}
+				rays[cell * DIRECTIONS + dir] = Arrays.copyOf(buffer, length);
+				moveRanges[cell * DIRECTIONS + dir] = range < 0 ? length : range;
+				if (length > 0) {
+					around[aroundCount++] = buffer[0];
+				}
+			}
+			neighbours[cell] = Arrays.copyOf(around, aroundCount);
+		}
+
+		this.rotations = new int[6][count];
+		for (int rot = 0; rot < 6; rot++) {
+			for (cell = 0; cell < count; cell++) {
+				rotations[rot][cell] = getCell(PhwarBoard.rotatePositionGetX(cellX[cell], cellY[cell], rot),
+						PhwarBoard.rotatePositionGetY(cellX[cell], cellY[cell], rot));
+			}
+		}
+
+		this.symmetries = new int[SYMMETRIES][];
+		for (int sym = 0; sym < SYMMETRIES; sym++) {
+			symmetries[sym] = new int[count];
+			for (cell = 0; cell < count; cell++) {
+				// swapping x and y mirrors the board along the x=y diagonal
+				int mirrored = sym < 6 ? cell : getCell(cellY[cell], cellX[cell]);
+				symmetries[sym][cell] = rotations[sym % 6][mirrored];
+			}
+		}
+	}
+
+	/**
+	 * @return radius of the hexagon board.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return amount of cells on the board.
+	 */
+	public int getCellCount() {
+		return cellX.length;
+	}
+
+	/**
+	 * @param posX
+	 *            the x coordinate of the cell.
+	 * @param posY
+	 *            the y coordinate of the cell.
+	 * @return index of the cell, or -1 if the position is outside of the board.
+	 */
+	public int getCell(int posX, int posY) {
+		if (posX < -size || posX > size || posY < -size || posY > size) {
+			return -1;
+		}
+		return cellIndex[(posX + size) * diameter + posY + size];
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return the x coordinate of the cell.
+	 */
+	public int getPosX(int cell) {
+		return cellX[cell];
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return the y coordinate of the cell.
+	 */
+	public int getPosY(int cell) {
+		return cellY[cell];
+	}
+
+	/**
+	 * @return index of the center cell 0/0.
+	 */
+	public int getCenterCell() {
+		return centerCell;
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return amount of steps to the center, ignoring other particles. 0 for the
+	 *         center itself, up to {@link #getSize()} for the border.
+	 */
+	public int getCenterDistance(int cell) {
+		return centerDistances[cell];
+	}
+
+	/**
+	 * Returns all cells in the given direction until the border of the board,
+	 * ordered by distance. Does not care about the center, so it can be used for
+	 * the line of sight. Must not be modified.
+	 *
+	 * @param cell
+	 *            index of the starting cell, which is not part of the ray.
+	 * @param direction
+	 *            direction between 0 and 5, inclusive.
+	 * @return cells in that direction, or an empty array at the border.
+	 */
+	public int[] getRay(int cell, int direction) {
+		return rays[cell * DIRECTIONS + direction];
+	}
+
+	/**
+	 * Returns how many cells of the ray in the given direction can be moved to
+	 * without skipping over the center. The actual move might be shorter because
+	 * of blocking particles.
+	 *
+	 * @param cell
+	 *            index of the starting cell.
+	 * @param direction
+	 *            direction between 0 and 5, inclusive.
+	 * @return length of the ray part that is allowed for moves.
+	 */
+	public int getMoveRange(int cell, int direction) {
+		return moveRanges[cell * DIRECTIONS + direction];
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell.
+	 * @return all directly surrounding cells. Must not be modified.
+	 */
+	public int[] getNeighbours(int cell) {
+		return neighbours[cell];
+	}
+
+	/**
+	 * Rotates one cell around the center of the board. Same as
+	 * {@link PhwarBoard#rotatePositionGetX(int, int, int) rotatePositionGetX} and
+	 * {@link PhwarBoard#rotatePositionGetY(int, int, int) rotatePositionGetY}.
+	 *
+	 * @param cell
+	 *            index of the cell to rotate.
+	 * @param rotations
+	 *            number of rotations between 0 and 5, inclusive.
+	 * @return index of the rotated cell.
+	 */
+	public int rotate(int cell, int rotations) {
+		return this.rotations[rotations][cell];
+	}
+
+	/**
+	 * Maps one cell to its position after applying one of the symmetries of the
+	 * board. Symmetries 0 to 5 are the same as {@link #rotate(int, int) rotate},
+	 * 6 to 11 mirror the board first and rotate it after that. The rules of the
+	 * game are the same for all of them.
+	 *
+	 * @param cell
+	 *            index of the cell to map.
+	 * @param symmetry
+	 *            the symmetry between 0 and 11, inclusive.
+	 * @return index of the mapped cell.
+	 */
+	public int transform(int cell, int symmetry) {
+		return symmetries[symmetry][cell];
+	}
+
+	/**
+	 * @param symmetry
+	 *            the symmetry between 0 and 11, inclusive.
+	 * @return the symmetry that maps the cells back, see
+	 *         {@link #transform(int, int) transform}.
+	 */
+	public static int inverse(int symmetry) {
+		// mirroring and rotating is a mirroring along another axis, which reverts
+		// itself
+		return symmetry < 6 ? (6 - symmetry) % 6 : symmetry;
+	}
+
+	/**
+	 * @param direction
+	 *            direction between 0 and 5, inclusive.
+	 * @return the direction pointing the other way.
+	 */
+	public static int opposite(int direction) {
+		return direction ^ 1;
+	}
+}
@@ -1,16 +1,18 @@
 package adver.sarius.phwar.model;
 
 import java.time.LocalTime;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -28,18 +30,26 @@ public class PhwarBoard {
 	 * means the middle hexagon with 6 surrounding ones.
 	 */
 	private int size;
+	/** Precomputed cell tables for the size of the board. */
+	private BoardGeometry geometry;
 	/**
 	 * Queue representing all active players in their order of succession. Current
-	 * player is the first element.
+	 * player is the first element. Only the first playerCount elements are used.
 	 */
-	private Queue<Integer> playerQueue;
+	private int[] playerQueue;
+	/** Amount of active players in the playerQueue. */
+	private int playerCount;
 	/**
 	 * Current state of the turn. This way you can tell if the player already has
 	 * moved or the game is won.
 	 */
 	private State state;
-	/** All particles on the board. */
-	private Set<Particle> particles;
+	/** Precomputed hash keys for the size of the board. */
+	private Zobrist zobrist;
+	/** All particles on the board, indexed by their cell. */
+	private BitBoard bitBoard;
+	/** Unmodifiable view of all particles on the board. */
+	private final Set<Particle> particles = new ParticleView();
 	/**
 	 * All the registered ModelListener. They will be informed if there are any
 	 * changes in the model.
@@ -52,6 +62,32 @@ public class PhwarBoard {
 	 * players finished their turn once.
 	 **/
 	private int round;
+	/**
+	 * Reversible changes done by {@link #doMove(int, int) doMove},
+	 * {@link #doCapture(int, int) doCapture} and {@link #doNextPlayer()
+	 * doNextPlayer}. Each entry is stored across the undo arrays at the same
+	 * index. Allocated on first use, and only grown if needed.
+	 */
+	private int[] undoKind;
+	private int[] undoA;
+	private int[] undoB;
+	private State[] undoState;
+	private Particle[] undoParticle;
+	/** Amount of entries on the undo stack. */
+	private int undoSize;
+
+	/** Undo entry: moved a particle from cell A to cell B. */
+	private static final int UNDO_MOVE = 0;
+	/** Undo entry: captured the particle at cell B with the one at cell A. */
+	private static final int UNDO_CAPTURE = 1;
+	/** Undo entry: finished the turn, round before was A. */
+	private static final int UNDO_NEXT_PLAYER = 2;
+	/** Undo entry: skipped the move because no particle could move. */
+	private static final int UNDO_SKIP_MOVE = 3;
+	/** Undo entry, part of a capture: removed the particle of a lost player. */
+	private static final int UNDO_REMOVED_PARTICLE = 4;
+	/** Undo entry, part of a capture: removed player A from queue index B. */
+	private static final int UNDO_REMOVED_PLAYER = 5;
 
 	// TODO: LogHistory?!
 	// TODO: isWon() method to be able to check it for predefined setups
@@ -65,25 +101,73 @@ public class PhwarBoard {
 		resetDefaultBoard();
 	}
 
+	/**
+	 * Creates a board with the given particles instead of the default setup, for
+	 * example to analyze the end of a game. Player 0 starts with his move.
+	 * 
+	 * @param size
+	 *            radius of the hexagon board, see {@link #getSize()}.
+	 * @param players
+	 *            amount of players.
+	 * @param particles
+	 *            the particles to place, each on another cell inside the board.
+	 *            They are copied, so they can be reused.
+	 */
+	public PhwarBoard(int size, int players, Collection<Particle> particles) {
+		this.size = size;
+		geometry = BoardGeometry.of(size);
+		zobrist = Zobrist.of(geometry);
+		round = 1;
+		playerQueue = IntStream.range(0, players).toArray();
+		playerCount = players;
+		state = State.NOT_MOVED;
+		bitBoard = new BitBoard(geometry, players);
+		particles.forEach(p -> bitBoard.place(new Particle(p)));
+	}
+
 	/**
 	 * Copy constructor. Also copies the particle Objects. But does NOT copy or
-	 * register any listener or logs.
+	 * register any listener or logs. Every copy is counted in {@link #counter},
+	 * which is not thread safe. Use {@link #copy()} to create copies in other
+	 * threads.
 	 * 
 	 * @param board
 	 *            the board to copy everything from, besides listener.
 	 */
 	public PhwarBoard(PhwarBoard board) {
+		this(board, true);
+	}
+
+	private PhwarBoard(PhwarBoard board, boolean counted) {
 		this.size = board.size;
-		this.playerQueue = new LinkedList<>(board.playerQueue);
+		this.geometry = board.geometry;
+		this.zobrist = board.zobrist;
+		this.playerQueue = board.playerQueue.clone();
+		this.playerCount = board.playerCount;
 		this.state = board.state;
-		this.particles = new HashSet<>();
-		board.particles.forEach(p -> this.particles.add(new Particle(p)));
+		this.round = board.round;
+		this.bitBoard = new BitBoard(board.bitBoard);
 		// this.listener = new HashSet<>(board.listener);
-		counter++;
+		if (counted) {
+			counter++;
+		}
 	}
 
+	/** Amount of copies created by the copy constructor. Not thread safe. */
 	public static long counter;
 
+	/**
+	 * Same as the {@link #PhwarBoard(PhwarBoard) copy constructor}, but without
+	 * counting the copy in the shared {@link #counter}. The copy doesn't share
+	 * anything modifiable with this board, so it can be used by another thread
+	 * while this board is used by the current one.
+	 * 
+	 * @return independent copy of this board, without listener or logs.
+	 */
+	public PhwarBoard copy() {
+		return new PhwarBoard(this, false);
+	}
+
 	/**
 	 * Lets the current player move one of his particles. He can only move once at
 	 * the start of each turn.
@@ -118,7 +202,7 @@ public class PhwarBoard {
 			throw new IllegalMoveException("You can't skip over the center point.");
 		}
 
-		Optional<Particle> start = getParticle(startX, startY, particles);
+		Optional<Particle> start = getParticle(startX, startY);
 
 		if (!start.isPresent()) {
 			throw new IllegalMoveException("There has to be a particle on the start position.");
@@ -131,7 +215,7 @@ public class PhwarBoard {
 			throw new IllegalMoveException("You can't move on top or over particles.");
 		}
 
-		pStart.setPos(targetX, targetY);
+		bitBoard.move(geometry.getCell(startX, startY), geometry.getCell(targetX, targetY));
 		logMessage("moves " + pStart.getName() + " from " + startX + "/" + startY + " to " + targetX + "/" + targetY
 				+ ".");
 		state = (targetX == 0 && targetY == 0 && pStart.getCharge() == 0) ? State.WON : State.MOVED;
@@ -166,20 +250,21 @@ public class PhwarBoard {
 		if (state == State.WON) {
 			throw new IllegalCaptureException("The game is already won.");
 		}
-		Optional<Particle> opp = getParticle(oppX, oppY, particles);
+		Optional<Particle> opp = getParticle(oppX, oppY);
 		if (opp.isPresent() && opp.get().getPlayer() != getCurrentPlayer()) {
-			Optional<Particle> own = getParticle(ownX, ownY, particles);
+			Optional<Particle> own = getParticle(ownX, ownY);
 			if (own.isPresent() && own.get().getPlayer() == getCurrentPlayer()) {
 
 				if (computeParticlesToCaptureBy(own.get()).contains(opp.get())) {
-					particles.remove(opp.get());
-					own.get().setPos(oppX, oppY);
+					int oppCell = geometry.getCell(oppX, oppY);
+					bitBoard.remove(oppCell);
+					bitBoard.move(geometry.getCell(ownX, ownY), oppCell);
 					state = State.CAPTURED;
 					logMessage("captures " + opp.get().getName() + " at " + oppX + "/" + oppY + " from player "
 							+ opp.get().getPlayer() + " with " + own.get().getName() + " at " + ownX + "/" + ownY
 							+ ".");
 
-					if ((checkParticleCount(opp.get().getPlayer()) && playerQueue.size() == 1)
+					if ((checkParticleCount(opp.get().getPlayer()) && playerCount == 1)
 							|| (own.get().getCharge() == 0 && own.get().getPosX() == 0 && own.get().getPosY() == 0)) {
 						state = State.WON;
 						logMessage("wins by doing this capture.");
@@ -214,11 +299,7 @@ public class PhwarBoard {
 		}
 		logMessage("finishes the turn.");
 		state = State.NOT_MOVED;
-		int lastPlayer = getCurrentPlayer();
-		playerQueue.add(playerQueue.poll());
-		if (lastPlayer > getCurrentPlayer()) {
-			round++;
-		}
+		rotatePlayerQueue();
 		// logMessage("starts the turn.");
 		informListener();
 		return getCurrentPlayer();
@@ -243,10 +324,7 @@ public class PhwarBoard {
 	 *         otherwise false.
 	 */
 	public boolean moveUnchecked(int startX, int startY, int targetX, int targetY) {
-		Particle pStart = getParticle(startX, startY, particles).get();
-		pStart.setPos(targetX, targetY);
-		state = (targetX == 0 && targetY == 0 && pStart.getCharge() == 0) ? State.WON : State.MOVED;
-		return state == State.WON;
+		return applyMove(geometry.getCell(startX, startY), geometry.getCell(targetX, targetY), false);
 	}
 
 	/**
@@ -268,16 +346,7 @@ public class PhwarBoard {
 	 *         capture, otherwise false.
 	 */
 	public boolean captureUnchecked(int ownX, int ownY, int oppX, int oppY) {
-		Particle own = getParticle(ownX, ownY, particles).get();
-		Particle opp = getParticle(oppX, oppY, particles).get();
-		particles.remove(opp);
-		own.setPos(oppX, oppY);
-		state = State.CAPTURED;
-		if ((checkParticleCount(opp.getPlayer()) && playerQueue.size() == 1)
-				|| (own.getCharge() == 0 && own.getPosX() == 0 && own.getPosY() == 0)) {
-			state = State.WON;
-		}
-		return state == State.WON;
+		return applyCapture(geometry.getCell(ownX, ownY), geometry.getCell(oppX, oppY), false);
 	}
 
 	/**
@@ -291,12 +360,192 @@ public class PhwarBoard {
 	 */
 	public int nextPlayerUnchecked() {
 		state = State.NOT_MOVED;
-		int lastPlayer = getCurrentPlayer();
-		playerQueue.add(playerQueue.poll());
+		rotatePlayerQueue();
+		return getCurrentPlayer();
+	}
+
+	/**
+	 * Same as {@link #moveUnchecked(int, int, int, int) moveUnchecked}, but
+	 * records the change so it can be reverted with {@link #undo()}. Does not
+	 * check any rules or board conditions!
+	 * 
+	 * @param startCell
+	 *            index of the cell with the own particle to move with.
+	 * @param targetCell
+	 *            index of the empty target cell.
+	 * @return true if the current (moving) player has won the game with his move,
+	 *         otherwise false.
+	 */
+	public boolean doMove(int startCell, int targetCell) {
+		return applyMove(startCell, targetCell, true);
+	}
+
+	/**
+	 * Same as {@link #captureUnchecked(int, int, int, int) captureUnchecked}, but
+	 * records the change so it can be reverted with {@link #undo()}. Does not
+	 * check any rules or board conditions!
+	 * 
+	 * @param ownCell
+	 *            index of the cell with the own particle to capture with.
+	 * @param oppCell
+	 *            index of the cell with the enemy particle to capture.
+	 * @return true if the current (capturing) player has won the game with his
+	 *         capture, otherwise false.
+	 */
+	public boolean doCapture(int ownCell, int oppCell) {
+		return applyCapture(ownCell, oppCell, true);
+	}
+
+	/**
+	 * Skips the move of the current player, for when none of his particles can
+	 * move. Records the change so it can be reverted with {@link #undo()}. Does
+	 * not check any rules or board conditions!
+	 */
+	public void doSkipMove() {
+		pushUndo(UNDO_SKIP_MOVE, 0, 0, null);
+		state = State.MOVED;
+	}
+
+	/**
+	 * Same as {@link #nextPlayerUnchecked()}, but records the change so it can be
+	 * reverted with {@link #undo()}. Does not check any rules or board conditions!
+	 * 
+	 * @return the new current player.
+	 */
+	public int doNextPlayer() {
+		pushUndo(UNDO_NEXT_PLAYER, round, 0, null);
+		return nextPlayerUnchecked();
+	}
+
+	/**
+	 * Reverts the last change done by {@link #doMove(int, int) doMove},
+	 * {@link #doCapture(int, int) doCapture}, {@link #doSkipMove() doSkipMove} or
+	 * {@link #doNextPlayer() doNextPlayer}.
+	 * 
+	 * @throws IllegalStateException
+	 *             if there is nothing to undo.
+	 */
+	public void undo() {
+		while (true) {
+			if (undoSize == 0) {
+				throw new IllegalStateException("Nothing to undo.");
+			}
+			int i = --undoSize;
+			int a = undoA[i];
+			int b = undoB[i];
+			Particle particle = undoParticle[i];
+			undoParticle[i] = null;
+			switch (undoKind[i]) {
+			case UNDO_REMOVED_PLAYER:
+				System.arraycopy(playerQueue, b, playerQueue, b + 1, playerCount - b);
+				playerQueue[b] = a;
+				playerCount++;
+				continue;
+			case UNDO_REMOVED_PARTICLE:
+				bitBoard.place(particle);
+				continue;
+			case UNDO_MOVE:
+				bitBoard.move(b, a);
+				break;
+			case UNDO_CAPTURE:
+				bitBoard.move(b, a);
+				bitBoard.place(particle);
+				break;
+			case UNDO_NEXT_PLAYER:
+				int lastPlayer = playerQueue[playerCount - 1];
+				System.arraycopy(playerQueue, 0, playerQueue, 1, playerCount - 1);
+				playerQueue[0] = lastPlayer;
+				round = a;
+				break;
+			case UNDO_SKIP_MOVE:
+				break;
+			}
+			state = undoState[i];
+			return;
+		}
+	}
+
+	/**
+	 * Reverts changes until the undo stack has the given depth again.
+	 * 
+	 * @param depth
+	 *            depth returned by {@link #getUndoDepth()} before doing the changes
+	 *            to revert.
+	 */
+	public void undoTo(int depth) {
+		while (undoSize > depth) {
+			undo();
+		}
+	}
+
+	/**
+	 * @return current depth of the undo stack, to be used with
+	 *         {@link #undoTo(int)}.
+	 */
+	public int getUndoDepth() {
+		return undoSize;
+	}
+
+	private boolean applyMove(int startCell, int targetCell, boolean record) {
+		if (record) {
+			pushUndo(UNDO_MOVE, startCell, targetCell, null);
+		}
+		bitBoard.move(startCell, targetCell);
+		state = (targetCell == geometry.getCenterCell() && bitBoard.getParticle(targetCell).getCharge() == 0)
+				? State.WON
+				: State.MOVED;
+		return state == State.WON;
+	}
+
+	private boolean applyCapture(int ownCell, int oppCell, boolean record) {
+		if (record) {
+			pushUndo(UNDO_CAPTURE, ownCell, oppCell, bitBoard.getParticle(oppCell));
+		}
+		Particle opp = bitBoard.remove(oppCell);
+		bitBoard.move(ownCell, oppCell);
+		state = State.CAPTURED;
+		if ((removePlayerIfIncomplete(opp.getPlayer(), record) && playerCount == 1)
+				|| (oppCell == geometry.getCenterCell() && bitBoard.getParticle(oppCell).getCharge() == 0)) {
+			state = State.WON;
+		}
+		return state == State.WON;
+	}
+
+	/**
+	 * Moves the current player to the end of the queue, and increments the round
+	 * if needed.
+	 */
+	private void rotatePlayerQueue() {
+		int lastPlayer = playerQueue[0];
+		System.arraycopy(playerQueue, 1, playerQueue, 0, playerCount - 1);
+		playerQueue[playerCount - 1] = lastPlayer;
 		if (lastPlayer > getCurrentPlayer()) {
 			round++;
 		}
-		return getCurrentPlayer();
+	}
+
+	private void pushUndo(int kind, int a, int b, Particle particle) {
+		if (undoKind == null) {
+			int capacity = 64;
+			undoKind = new int[capacity];
+			undoA = new int[capacity];
+			undoB = new int[capacity];
+			undoState = new State[capacity];
+			undoParticle = new Particle[capacity];
+		} else if (undoSize == undoKind.length) {
+			int capacity = undoSize * 2;
+			undoKind = Arrays.copyOf(undoKind, capacity);
+			undoA = Arrays.copyOf(undoA, capacity);
+			undoB = Arrays.copyOf(undoB, capacity);
+			undoState = Arrays.copyOf(undoState, capacity);
+			undoParticle = Arrays.copyOf(undoParticle, capacity);
+		}
+		undoKind[undoSize] = kind;
+		undoA[undoSize] = a;
+		undoB[undoSize] = b;
+		undoState[undoSize] = state;
+		undoParticle[undoSize] = particle;
+		undoSize++;
 	}
 
 	/**
@@ -331,18 +580,17 @@ public class PhwarBoard {
 			System.out.println("computeParticlesToCaptureBy() wrong player?");
 			// TODO: What now? Do I care?
 		}
-		return computeParticlesInLineOfSight(capturer.getPosX(), capturer.getPosY()).stream()
-				.filter(p -> p.getPlayer() != capturer.getPlayer()).filter(p -> {
-					int charge = 0;
-					int ownParticles = 0;
-					for (Particle p2 : computeParticlesInLineOfSight(p.getPosX(), p.getPosY())) {
-						charge += p2.getCharge();
-						if (p2.getPlayer() == capturer.getPlayer()) {
-							ownParticles++;
-						}
-					}
-					return charge == 0 && ownParticles >= 2;
-				}).collect(Collectors.toSet());
+		Set<Particle> ret = new HashSet<>();
+		SightMap sight = bitBoard.getSightMap();
+		int cell = geometry.getCell(capturer.getPosX(), capturer.getPosY());
+		for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+			int seen = sight.getSeen(cell, dir);
+			if (seen >= 0 && bitBoard.getParticle(seen).getPlayer() != capturer.getPlayer()
+					&& sight.isCapturable(seen, capturer.getPlayer())) {
+				ret.add(bitBoard.getParticle(seen));
+			}
+		}
+		return ret;
 	}
 
 	/**
@@ -359,7 +607,7 @@ public class PhwarBoard {
 	 * @return all enemy particles the capturer is allowed to capture.
 	 */
 	public Set<Particle> computeParticlesToCaptureBy(int capturerPosX, int capturerPosY) {
-		Optional<Particle> part = getParticle(capturerPosX, capturerPosY, particles);
+		Optional<Particle> part = getParticle(capturerPosX, capturerPosY);
 		if (!part.isPresent()) {
 			throw new PhwarBoardException("No particle at the given position found that could do the capture.");
 		}
@@ -391,14 +639,9 @@ public class PhwarBoard {
 	 * @return true if at least one free cell is in reach.
 	 */
 	private boolean hasAtLeatOneCellToMove(Particle particle) {
-		for (int x = -1; x < 2; x++) {
-			for (int y = -1; y < 2; y++) {
-				if (x == -y || !isInsideBoard(particle.getPosX() + x, particle.getPosY() + y)) {
-					continue;
-				}
-				if (!getParticle(particle.getPosX() + x, particle.getPosY() + y, particles).isPresent()) {
-					return true;
-				}
+		for (int neighbour : geometry.getNeighbours(geometry.getCell(particle.getPosX(), particle.getPosY()))) {
+			if (!bitBoard.isOccupied(neighbour)) {
+				return true;
 			}
 		}
 		return false;
@@ -427,7 +670,7 @@ public class PhwarBoard {
 		int x = 0;
 		int y = 0;
 		while (targetX + x != startX || targetY + y != startY) {
-			if (getParticle(targetX + x, targetY + y, particles).isPresent()) {
+			if (isOccupied(targetX + x, targetY + y)) {
 				return false;
 			}
 			x += signX;
@@ -444,21 +687,20 @@ public class PhwarBoard {
 	 * @return true if position is inside the hexagon board.
 	 */
 	public boolean isInsideBoard(int posX, int posY) {
-		if (Math.abs(posX) > size || Math.abs(posY) > size) {
-			return false;
-		}
-		// TODO: optimize?
-		// missing corners: 5/-1, 5/-2,4/-2, 5/-3,4/-3,3/-3,
-		// 5/-4,4/-4,3/-4,2/-4,5/-5,4/-5,3/-5,2/-5,1/-5
-		// same for other: -5/1, -5/2,-4/2, ...
-		for (int i = 1; i <= size; i++) {
-			for (int j = size; j > size - i; j--) {
-				if ((i == posX && -j == posY) || (-i == posX && j == posY)) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return geometry.getCell(posX, posY) >= 0;
+	}
+
+	/**
+	 * @param posX
+	 *            the x coordinate of the cell to check for.
+	 * @param posY
+	 *            the y coordinate of the cell to check for.
+	 * @return true if there is a particle on the cell. Positions outside the board
+	 *         are never occupied.
+	 */
+	public boolean isOccupied(int posX, int posY) {
+		int cell = geometry.getCell(posX, posY);
+		return cell >= 0 && bitBoard.isOccupied(cell);
 	}
 
 	/**
@@ -514,11 +756,7 @@ public class PhwarBoard {
 	 * @return true if removed the given player and particles, because he lost.
 	 */
 	private boolean checkParticleCount(int playerToCheck) {
-		if (particles.stream().filter(p -> p.getPlayer() == playerToCheck)
-				.collect(() -> new HashSet<>(), (s, p) -> s.add(p.getCharge()), (s1, s2) -> s1.addAll(s2))
-				.size() != 3) {
-			particles.removeIf(p -> p.getPlayer() == playerToCheck);
-			playerQueue.remove(playerToCheck);
+		if (removePlayerIfIncomplete(playerToCheck, false)) {
 			logMessage(
 					"removed player " + playerToCheck + " from the game by capturing the last particle of one charge.");
 			return true;
@@ -526,6 +764,39 @@ public class PhwarBoard {
 		return false;
 	}
 
+	/**
+	 * Same as {@link #checkParticleCount(int)}, but without logging.
+	 * 
+	 * @param playerToCheck
+	 *            player to be checked.
+	 * @param record
+	 *            true to record the removal on the undo stack.
+	 * @return true if removed the given player and particles, because he lost.
+	 */
+	private boolean removePlayerIfIncomplete(int playerToCheck, boolean record) {
+		if (bitBoard.hasAllCharges(playerToCheck)) {
+			return false;
+		}
+		for (int cell = bitBoard.nextOccupied(playerToCheck, 0); cell >= 0; cell = bitBoard
+				.nextOccupied(playerToCheck, cell + 1)) {
+			Particle removed = bitBoard.remove(cell);
+			if (record) {
+				pushUndo(UNDO_REMOVED_PARTICLE, cell, 0, removed);
+			}
+		}
+		for (int i = 0; i < playerCount; i++) {
+			if (playerQueue[i] == playerToCheck) {
+				if (record) {
+					pushUndo(UNDO_REMOVED_PLAYER, playerToCheck, i, null);
+				}
+				System.arraycopy(playerQueue, i + 1, playerQueue, i, playerCount - i - 1);
+				playerCount--;
+				break;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Searches the given set for any particle that matches the position.
 	 * 
@@ -542,86 +813,54 @@ public class PhwarBoard {
 	}
 
 	/**
-	 * Returns a set of all the first particles found in each of the 6 directions.
-	 * Particle on starting position will be ignored.
+	 * Looks up the particle at the given position of this board, without
+	 * searching through all the particles.
 	 * 
 	 * @param posX
-	 *            the x coordinate of the position to look for other particle in
-	 *            line of sight.
+	 *            the x coordinate of the position to look for a particle.
 	 * @param posY
-	 *            the y coordinate of the position to look for other particle in
-	 *            line of sight.
-	 * 
-	 * @return set containing 0 to 6 particles.
+	 *            the y coordinate of the position to look for a particle
+	 * @return possibly found particle at the given position.
 	 */
-	private Set<Particle> computeParticlesInLineOfSight(int posX, int posY) {
-		// TODO: Find better algorithm?
-		// corners outside the board also checked...
-		Set<Particle> ret = new HashSet<>();
-		for (int i = posX + 1; i <= size; i++) { // diagonal top right
-			Optional<Particle> part = getParticle(i, posY, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		for (int i = posX - 1; i >= -size; i--) { // diagonal bottom left
-			Optional<Particle> part = getParticle(i, posY, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		for (int i = posY + 1; i <= size; i++) { // top
-			Optional<Particle> part = getParticle(posX, i, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		for (int i = posY - 1; i >= -size; i--) { // bottom
-			Optional<Particle> part = getParticle(posX, i, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		for (int i = 1; posX + i <= size && posY + i <= size; i++) { // bottom right
-			Optional<Particle> part = getParticle(posX + i, posY + i, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		for (int i = -1; posX + i >= -size && posY + i >= -size; i--) { // top left
-			Optional<Particle> part = getParticle(posX + i, posY + i, particles);
-			if (part.isPresent()) {
-				ret.add(part.get());
-				break;
-			}
-		}
-		return ret;
+	public Optional<Particle> getParticle(int posX, int posY) {
+		int cell = geometry.getCell(posX, posY);
+		return cell < 0 ? Optional.empty() : Optional.ofNullable(bitBoard.getParticle(cell));
 	}
 
 	/**
 	 * @return Set containing all the particles that are currently in-play.
 	 */
 	public Set<Particle> getParticles() {
-		return Collections.unmodifiableSet(particles);
+		return particles;
+	}
+
+	/**
+	 * @return cell indexed representation of the particles. Can be used for fast
+	 *         read access, but should not be modified.
+	 */
+	public BitBoard getBitBoard() {
+		return bitBoard;
+	}
+
+	/**
+	 * @return precomputed cell tables for the size of this board.
+	 */
+	public BoardGeometry getGeometry() {
+		return geometry;
 	}
 
 	/**
 	 * @return the current player that has to do its turn.
 	 */
 	public int getCurrentPlayer() {
-		return playerQueue.peek();
+		return playerQueue[0];
 	}
 
 	/**
 	 * @return the amount of players that haven't lost yet.
 	 */
 	public int getActivePlayerCount() {
-		return playerQueue.size();
+		return playerCount;
 	}
 
 	/**
@@ -682,12 +921,15 @@ public class PhwarBoard {
 	private void resetDefaultBoard() {
 		int startingPlayers = 2;
 		size = 5;
+		geometry = BoardGeometry.of(size);
+		zobrist = Zobrist.of(geometry);
 		round = 1;
 		log = new ArrayList<>();
-		playerQueue = new LinkedList<>();
-		IntStream.range(0, startingPlayers).forEach(i -> playerQueue.add(i));
+		playerQueue = IntStream.range(0, startingPlayers).toArray();
+		playerCount = startingPlayers;
+		undoSize = 0;
 		state = State.NOT_MOVED;
-		particles = new HashSet<>();
+		Set<Particle> particles = new HashSet<>();
 		particles.add(new Particle(1, -1, 0, 3));
 		particles.add(new Particle(1, -1, 0, 4));
 		particles.add(new Particle(1, 0, 0, 5));
@@ -754,6 +996,8 @@ public class PhwarBoard {
 		// particles.add(new Particle(1,1, -1, -4));
 		// particles.add(new Particle(0,0, 0, 5));
 
+		bitBoard = new BitBoard(geometry, startingPlayers);
+		particles.forEach(bitBoard::place);
 		informListener();
 	}
 
@@ -772,13 +1016,107 @@ public class PhwarBoard {
 		List<String> normalized = new ArrayList<>();
 		// TODO: use Particle and toString() or so?
 		int rotations = getRotationsToNormalize();
-		particles.forEach(p -> normalized.add(getNormalizedPlayer(p.getPlayer()) + "/" + p.getCharge() + "/"
-				+ rotatePositionGetX(p.getPosX(), p.getPosY(), rotations) + "/"
-				+ rotatePositionGetY(p.getPosX(), p.getPosY(), rotations)));
+		particles.forEach(p -> {
+			int rotated = geometry.rotate(geometry.getCell(p.getPosX(), p.getPosY()), rotations);
+			normalized.add(getNormalizedPlayer(p.getPlayer()) + "/" + p.getCharge() + "/" + geometry.getPosX(rotated)
+					+ "/" + geometry.getPosY(rotated));
+		});
 		Collections.sort(normalized);
 		return String.join("#", normalized);
 	}
 
+	/**
+	 * Returns a 64 bit hash of the current position, made of the particles, the
+	 * current player and the state of the turn. It is updated with every change,
+	 * so it can be used as a cheap key for hash tables and caches. Different
+	 * positions may have the same hash, although it is very unlikely.
+	 * 
+	 * @return hash of the current position.
+	 */
+	public long getHash() {
+		return bitBoard.getHash() ^ zobrist.getPlayerKey(getCurrentPlayer()) ^ zobrist.getStateKey(state);
+	}
+
+	/**
+	 * Returns a 64 bit hash of the current position that is the same for all
+	 * rotations of the board. Like {@link #getNormalizedParticlesString()}, the
+	 * current player will be named as player 0, and the next player as player 1.
+	 * Of the hashes for all 6 rotations, the smallest one will be returned.
+	 * 
+	 * @return normalized hash of the current position.
+	 */
+	public long getCanonicalHash() {
+		return getRotatedHash(getCanonicalRotation());
+	}
+
+	/**
+	 * Returns the rotation that belongs to {@link #getCanonicalHash()}. A cell
+	 * rotated by it with {@link BoardGeometry#rotate(int, int)} is the cell on the
+	 * canonical board, so moves stored for the canonical board can be rotated
+	 * back for this one. If multiple rotations look the same, the first one is
+	 * returned.
+	 * 
+	 * @return number of rotations between 0 and 5, inclusive.
+	 */
+	public int getCanonicalRotation() {
+		int bestRotation = 0;
+		long best = getRotatedHash(0);
+		for (int rot = 1; rot < 6; rot++) {
+			long hash = getRotatedHash(rot);
+			if (hash < best) {
+				best = hash;
+				bestRotation = rot;
+			}
+		}
+		return bestRotation;
+	}
+
+	/**
+	 * @return hash of the board rotated the given times, with normalized players.
+	 */
+	private long getRotatedHash(int rotation) {
+		long hash = zobrist.getStateKey(state);
+		for (int i = 0; i < playerCount; i++) {
+			hash ^= bitBoard.getRotatedHash(rotation, playerQueue[i], i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns a compact binary key of the current particles, which is the same for
+	 * all rotations and mirrored versions of the board. Players are normalized
+	 * like in {@link #getNormalizedParticlesString()}. Unlike the hashes, two
+	 * different positions never have the same key.
+	 * 
+	 * @return normalized key of the current particles.
+	 */
+	public PositionKey getCanonicalKey() {
+		return PositionKey.of(bitBoard, getNormalizedPlayers());
+	}
+
+	/**
+	 * Returns the symmetry of the board that {@link #getCanonicalKey()} uses.
+	 * Transforming the cells of a move on this board with it gives the same move
+	 * on the board of the key.
+	 * 
+	 * @return the symmetry between 0 and 11, see
+	 *         {@link BoardGeometry#transform(int, int)}.
+	 */
+	public int getCanonicalSymmetry() {
+		return PositionKey.findSymmetry(bitBoard, getNormalizedPlayers());
+	}
+
+	/**
+	 * @return the normalized number of each player, indexed by the player.
+	 */
+	private int[] getNormalizedPlayers() {
+		int[] renamed = new int[Math.max(bitBoard.getPlayerCount(), playerCount)];
+		for (int player = 0; player < renamed.length; player++) {
+			renamed[player] = getNormalizedPlayer(player);
+		}
+		return renamed;
+	}
+
 	/**
 	 * Returns the normalized value for the given player. The current player will
 	 * always be number 0, the next player number 1 and so on. This way a game with
@@ -790,9 +1128,8 @@ public class PhwarBoard {
 	 * @return normalized version of the player for the current state of game.
 	 */
 	private int getNormalizedPlayer(int player) {
-		LinkedList<Integer> copy = new LinkedList<>(playerQueue);
-		for (int i = 0; i < copy.size(); i++) {
-			if (copy.poll() == player) {
+		for (int i = 0; i < playerCount; i++) {
+			if (playerQueue[i] == player) {
 				return i;
 			}
 		}
@@ -803,8 +1140,7 @@ public class PhwarBoard {
 	 * @return the amount of rotations used to normalize the current board.
 	 */
 	public int getRotationsToNormalize() {
-		return getRotationsFor(particles.stream().filter(p -> p.getCharge() == 0 && p.getPlayer() == getCurrentPlayer())
-				.findAny().get());
+		return getRotationsFor(bitBoard.getParticle(bitBoard.findParticle(getCurrentPlayer(), 0)));
 	}
 
 	/**
@@ -960,7 +1296,7 @@ public class PhwarBoard {
 			builder.append(maxInset, 0, (size + x) * width + plusOne * width);
 			for (int j = 0; j <= loops; j++) {
 				// builder.append(x+j*2+plusOne).append("/").append(y+j);
-				builder.append(getCharForParticle(getParticle(x + j * 2 + plusOne, y + j, particles).orElse(null)));
+				builder.append(getCharForParticle(getParticle(x + j * 2 + plusOne, y + j).orElse(null)));
 				builder.append(maxInset, 0, 2 * width - 1);
 			}
 			builder.append(System.lineSeparator());
@@ -976,8 +1312,47 @@ public class PhwarBoard {
 		}
 		return builder.toString();
 	}
-}
 
-enum State {
-	NOT_MOVED, MOVED, CAPTURED, WON
-}
\ No newline at end of file
+	/**
+	 * Unmodifiable set of all particles, backed by the current bit board.
+	 */
+	private class ParticleView extends AbstractSet<Particle> {
+
+		@Override
+		public Iterator<Particle> iterator() {
+			return new Iterator<Particle>() {
+				private int cell = bitBoard.nextOccupied(0);
+
+				@Override
+				public boolean hasNext() {
+					return cell >= 0;
+				}
+
+				@Override
+				public Particle next() {
+					if (cell < 0) {
+						throw new NoSuchElementException();
+					}
+					Particle particle = bitBoard.getParticle(cell);
+					cell = bitBoard.nextOccupied(cell + 1);
+					return particle;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return bitBoard.countParticles();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Particle)) {
+				return false;
+			}
+			Particle particle = (Particle) o;
+			int cell = geometry.getCell(particle.getPosX(), particle.getPosY());
+			return cell >= 0 && bitBoard.getParticle(cell) == particle;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package adver.sarius.phwar.model;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Compact binary key of a board position, which is the same for all rotations
+ * and mirrored versions of the board. Every cell is stored as 4 bits, which are
+ * 0 for an empty cell, or 1 + player * 3 + charge + 1 for a particle. Like in
+ * {@link PhwarBoard#getNormalizedParticlesString()} the current player is
+ * named player 0, the next player player 1, and so on, so up to 5 players are
+ * supported. Of all 12 symmetries of the board, the smallest key is used.
+ */
+public final class PositionKey implements Comparable<PositionKey> {
+
+	/** Bits used for each cell. */
+	private static final int CELL_BITS = 4;
+	/** Cells stored in one long. */
+	private static final int CELLS_PER_WORD = 64 / CELL_BITS;
+
+	private final long[] words;
+	/** Amount of bytes needed for the cells of the board. */
+	private final int byteCount;
+	private final int hash;
+
+	private PositionKey(long[] words, int byteCount) {
+		this.words = words;
+		this.byteCount = byteCount;
+		this.hash = Arrays.hashCode(words);
+	}
+
+	/**
+	 * Creates the smallest key of all symmetries of the board.
+	 * 
+	 * @param bitBoard
+	 *            the particles to create the key for.
+	 * @param renamed
+	 *            the new number of each player, indexed by the old number.
+	 * @return the normalized key.
+	 */
+	static PositionKey of(BitBoard bitBoard, int[] renamed) {
+		long[] best = new long[getWordCount(bitBoard.getGeometry())];
+		findSmallest(bitBoard, renamed, best);
+		return new PositionKey(best, getByteCount(bitBoard.getGeometry()));
+	}
+
+	/**
+	 * Finds the symmetry of the board that has the smallest key.
+	 * 
+	 * @param bitBoard
+	 *            the particles to create the key for.
+	 * @param renamed
+	 *            the new number of each player, indexed by the old number.
+	 * @return the symmetry between 0 and 11, see
+	 *         {@link BoardGeometry#transform(int, int)}. If multiple symmetries
+	 *         have the smallest key, the first one.
+	 */
+	static int findSymmetry(BitBoard bitBoard, int[] renamed) {
+		return findSmallest(bitBoard, renamed, new long[getWordCount(bitBoard.getGeometry())]);
+	}
+
+	/**
+	 * Fills best with the smallest key of all symmetries, and returns the
+	 * symmetry.
+	 */
+	private static int findSmallest(BitBoard bitBoard, int[] renamed, long[] best) {
+		BoardGeometry geometry = bitBoard.getGeometry();
+		long[] current = new long[best.length];
+		int bestSymmetry = -1;
+		for (int sym = 0; sym < BoardGeometry.SYMMETRIES; sym++) {
+			Arrays.fill(current, 0);
+			for (int cell = bitBoard.nextOccupied(0); cell >= 0; cell = bitBoard.nextOccupied(cell + 1)) {
+				Particle particle = bitBoard.getParticle(cell);
+				int player = renamed[particle.getPlayer()];
+				if (player * 3 + 3 >= 1 << CELL_BITS) {
+					throw new IllegalStateException("Too many players for a position key.");
+				}
+				int target = geometry.transform(cell, sym);
+				current[target / CELLS_PER_WORD] |= (long) (1 + player * 3 + particle.getCharge() + 1) << (target
+						% CELLS_PER_WORD * CELL_BITS);
+			}
+			if (bestSymmetry < 0 || compare(current, best) < 0) {
+				System.arraycopy(current, 0, best, 0, best.length);
+				bestSymmetry = sym;
+			}
+		}
+		return bestSymmetry;
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @return amount of longs of each key for that board size.
+	 */
+	public static int getWordCount(BoardGeometry geometry) {
+		return (geometry.getCellCount() + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+	}
+
+	/**
+	 * @param geometry
+	 *            the geometry of the board.
+	 * @return amount of bytes of each key for that board size, as used by
+	 *         {@link #toBytes()}.
+	 */
+	public static int getByteCount(BoardGeometry geometry) {
+		return (geometry.getCellCount() * CELL_BITS + 7) / 8;
+	}
+
+	/**
+	 * @param bytes
+	 *            bytes created by {@link #toBytes()}.
+	 * @return the key of that bytes.
+	 */
+	public static PositionKey fromBytes(byte[] bytes) {
+		long[] words = new long[(bytes.length * 8 + 63) / 64];
+		for (int i = 0; i < bytes.length; i++) {
+			words[i / 8] |= (bytes[i] & 0xFFL) << (i % 8 * 8);
+		}
+		return new PositionKey(words, bytes.length);
+	}
+
+	/**
+	 * @param text
+	 *            text created by {@link #toString()}.
+	 * @return the key of that text.
+	 */
+	public static PositionKey parse(String text) {
+		return fromBytes(Base64.getUrlDecoder().decode(text));
+	}
+
+	/**
+	 * @return the key as bytes, with the cells in ascending order and 2 cells per
+	 *         byte. Only as many bytes as needed for the cells of the board.
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = new byte[byteCount];
+		for (int i = 0; i < byteCount; i++) {
+			bytes[i] = (byte) (words[i / 8] >>> (i % 8 * 8));
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param index
+	 *            index of the long.
+	 * @return one long of the key.
+	 */
+	public long getWord(int index) {
+		return words[index];
+	}
+
+	/**
+	 * @return amount of longs of the key.
+	 */
+	public int getWordCount() {
+		return words.length;
+	}
+
+	private static int compare(long[] a, long[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int cmp = Long.compareUnsigned(a[i], b[i]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(a.length, b.length);
+	}
+
+	@Override
+	public int compareTo(PositionKey other) {
+		return compare(words, other.words);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PositionKey && Arrays.equals(words, ((PositionKey) obj).words);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * @return the bytes of the key, encoded as url safe Base64 text.
+	 */
+	@Override
+	public String toString() {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(toBytes());
+	}
+}
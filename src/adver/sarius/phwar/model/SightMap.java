@@ -0,0 +1,284 @@
+package adver.sarius.phwar.model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the particles each particle can see. For every occupied cell
+ * it stores the nearest particle in each of the 6 directions, the sum of their
+ * charges, and how many of them belong to each player. When a particle is
+ * placed or removed, only the particles on its 3 lines get updated. This way
+ * it can be checked in constant time if a particle can be captured, and the
+ * amount of capturable particles of each player is kept up to date.
+ */
+public final class SightMap {
+
+	/** Precomputed cell tables of the board. */
+	private final BoardGeometry geometry;
+	/**
+	 * Nearest occupied cell in each direction, or -1 if there is none. Indexed by
+	 * cell * DIRECTIONS + direction.
+	 */
+	private final int[] sight;
+	/** Sum of the charges of all particles in line of sight of each cell. */
+	private final int[] charges;
+	/**
+	 * Amount of particles in line of sight of each cell that belong to a player.
+	 * Indexed by cell * playerCount + player.
+	 */
+	private final int[] counts;
+	/** Amount of players that have a counter for each cell. */
+	private final int playerCount;
+	/** True for each occupied cell whose particle another player can capture. */
+	private final boolean[] capturable;
+	/** Amount of particles of each player that another player can capture. */
+	private final int[] capturableCounts;
+
+	/**
+	 * Creates the line of sight of the given particles.
+	 *
+	 * @param geometry
+	 *            the cell tables for the size of the board.
+	 * @param playerCount
+	 *            amount of players to count the particles in sight for.
+	 * @param cells
+	 *            the particle on each cell, or null for empty cells.
+	 */
+	SightMap(BoardGeometry geometry, int playerCount, Particle[] cells) {
+		this.geometry = geometry;
+		this.playerCount = playerCount;
+		this.sight = new int[geometry.getCellCount() * BoardGeometry.DIRECTIONS];
+		this.charges = new int[geometry.getCellCount()];
+		this.counts = new int[geometry.getCellCount() * playerCount];
+		this.capturable = new boolean[geometry.getCellCount()];
+		this.capturableCounts = new int[playerCount];
+		for (int cell = 0; cell < cells.length; cell++) {
+			for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir++) {
+				sight[cell * BoardGeometry.DIRECTIONS + dir] = -1;
+			}
+		}
+		// placed one at a time, since add expects the other particles on the
+		// lines to be linked already, and would count them twice otherwise
+		Particle[] placed = new Particle[cells.length];
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] != null) {
+				placed[cell] = cells[cell];
+				add(cell, placed);
+			}
+		}
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param sightMap
+	 *            the map to copy everything from.
+	 */
+	SightMap(SightMap sightMap) {
+		this.geometry = sightMap.geometry;
+		this.playerCount = sightMap.playerCount;
+		this.sight = sightMap.sight.clone();
+		this.charges = sightMap.charges.clone();
+		this.counts = sightMap.counts.clone();
+		this.capturable = sightMap.capturable.clone();
+		this.capturableCounts = sightMap.capturableCounts.clone();
+	}
+
+	/**
+	 * @param cell
+	 *            index of an occupied cell.
+	 * @param direction
+	 *            direction between 0 and 5, inclusive.
+	 * @return the nearest occupied cell in that direction, or -1 if there is none.
+	 */
+	public int getSeen(int cell, int direction) {
+		return sight[cell * BoardGeometry.DIRECTIONS + direction];
+	}
+
+	/**
+	 * @param cell
+	 *            index of an occupied cell.
+	 * @return sum of the charges of all particles in line of sight.
+	 */
+	public int getChargeInSight(int cell) {
+		return charges[cell];
+	}
+
+	/**
+	 * @param cell
+	 *            index of an occupied cell.
+	 * @param player
+	 *            the player to count the particles for.
+	 * @return amount of particles of the player in line of sight.
+	 */
+	public int getCountInSight(int cell, int player) {
+		return player < playerCount ? counts[cell * playerCount + player] : 0;
+	}
+
+	/**
+	 * A particle can be captured if the charge of its particles in line of sight
+	 * sums up to 0, and at least two of the particles belong to the capturing
+	 * player.
+	 *
+	 * @param cell
+	 *            index of the cell with the particle to capture.
+	 * @param player
+	 *            the capturing player.
+	 * @return true if the particle can be captured by the player.
+	 */
+	public boolean isCapturable(int cell, int player) {
+		return charges[cell] == 0 && getCountInSight(cell, player) >= 2;
+	}
+
+	/**
+	 * @param player
+	 *            the owner of the particles.
+	 * @return amount of particles of the player that any other player can
+	 *         capture. Kept up to date with every change, so it's as fast as a
+	 *         field.
+	 */
+	public int countCapturable(int player) {
+		return player < playerCount ? capturableCounts[player] : 0;
+	}
+
+	/**
+	 * Compares the line of sight with another map of the same particles, that
+	 * might count fewer players.
+	 *
+	 * @param other
+	 *            the map to compare with.
+	 * @return true if both see the same particles, with the same charges and
+	 *         counts for the players of both maps, and no particles of the
+	 *         other players.
+	 */
+	boolean matches(SightMap other) {
+		if (geometry != other.geometry || !Arrays.equals(sight, other.sight)
+				|| !Arrays.equals(charges, other.charges)
+				|| !Arrays.equals(capturable, other.capturable)) {
+			return false;
+		}
+		for (int cell = 0; cell < charges.length; cell++) {
+			for (int player = 0; player < Math.max(playerCount, other.playerCount); player++) {
+				if (getCountInSight(cell, player) != other.getCountInSight(cell, player)) {
+					return false;
+				}
+			}
+		}
+		for (int player = 0; player < Math.max(playerCount, other.playerCount); player++) {
+			if (countCapturable(player) != other.countCapturable(player)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the line of sight after the particle got placed on the cell.
+	 *
+	 * @param cell
+	 *            index of the newly occupied cell.
+	 * @param cells
+	 *            the particle on each cell, already including the new one.
+	 */
+	void add(int cell, Particle[] cells) {
+		for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir += 2) {
+			int ahead = firstOccupied(geometry.getRay(cell, dir), cells);
+			int behind = firstOccupied(geometry.getRay(cell, dir + 1), cells);
+			// both of them saw each other before
+			if (ahead >= 0) {
+				replace(ahead, dir + 1, behind, cell, cells);
+				see(cell, dir, ahead, cells);
+				updateCapturable(ahead, cells);
+			}
+			if (behind >= 0) {
+				replace(behind, dir, ahead, cell, cells);
+				see(cell, dir + 1, behind, cells);
+				updateCapturable(behind, cells);
+			}
+		}
+		updateCapturable(cell, cells);
+	}
+
+	/**
+	 * Updates the line of sight before the particle gets taken from the cell.
+	 *
+	 * @param cell
+	 *            index of the cell that will be empty.
+	 * @param cells
+	 *            the particle on each cell, still including the one to remove.
+	 */
+	void remove(int cell, Particle[] cells) {
+		int index = cell * BoardGeometry.DIRECTIONS;
+		if (capturable[cell]) {
+			capturable[cell] = false;
+			capturableCounts[cells[cell].getPlayer()]--;
+		}
+		for (int dir = 0; dir < BoardGeometry.DIRECTIONS; dir += 2) {
+			int ahead = sight[index + dir];
+			int behind = sight[index + dir + 1];
+			// both of them see each other now
+			if (ahead >= 0) {
+				replace(ahead, dir + 1, cell, behind, cells);
+				updateCapturable(ahead, cells);
+			}
+			if (behind >= 0) {
+				replace(behind, dir, cell, ahead, cells);
+				updateCapturable(behind, cells);
+			}
+			sight[index + dir] = -1;
+			sight[index + dir + 1] = -1;
+		}
+		charges[cell] = 0;
+		for (int player = 0; player < playerCount; player++) {
+			counts[cell * playerCount + player] = 0;
+		}
+	}
+
+	/**
+	 * Lets the viewer see another particle in the given direction.
+	 */
+	private void replace(int viewer, int direction, int oldSeen, int newSeen, Particle[] cells) {
+		if (oldSeen >= 0) {
+			Particle particle = cells[oldSeen];
+			charges[viewer] -= particle.getCharge();
+			counts[viewer * playerCount + particle.getPlayer()]--;
+		}
+		sight[viewer * BoardGeometry.DIRECTIONS + direction] = -1;
+		if (newSeen >= 0) {
+			see(viewer, direction, newSeen, cells);
+		}
+	}
+
+	/**
+	 * Checks again if the particle on the cell can be captured, after its line of
+	 * sight changed, and updates the count of its owner.
+	 */
+	private void updateCapturable(int cell, Particle[] cells) {
+		int owner = cells[cell].getPlayer();
+		boolean now = false;
+		if (charges[cell] == 0) {
+			for (int player = 0; player < playerCount && !now; player++) {
+				now = player != owner && counts[cell * playerCount + player] >= 2;
+			}
+		}
+		if (now != capturable[cell]) {
+			capturable[cell] = now;
+			capturableCounts[owner] += now ? 1 : -1;
+		}
+	}
+
+	private void see(int viewer, int direction, int seen, Particle[] cells) {
+		Particle particle = cells[seen];
+		sight[viewer * BoardGeometry.DIRECTIONS + direction] = seen;
+		charges[viewer] += particle.getCharge();
+		counts[viewer * playerCount + particle.getPlayer()]++;
+	}
+
+	private static int firstOccupied(int[] ray, Particle[] cells) {
+		for (int cell : ray) {
+			if (cells[cell] != null) {
+				return cell;
+			}
+		}
+		return -1;
+	}
+}
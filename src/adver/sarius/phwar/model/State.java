@@ -0,0 +1,5 @@
+package adver.sarius.phwar.model;
+
+enum State {
+	NOT_MOVED, MOVED, CAPTURED, WON
+}
@@ -0,0 +1,102 @@
+package adver.sarius.phwar.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Random keys to hash board positions into one long. The hash of a position is
+ * the xor of the keys of all its particles, so it can be updated with one xor
+ * whenever a particle is placed or removed. The keys are always generated the
+ * same way, so hashes stay the same across runs and can be stored in files.
+ */
+public final class Zobrist {
+
+	/** Amount of players that get precomputed particle keys. */
+	private static final int TABLE_PLAYERS = 8;
+	/** Already computed keys for each board size. */
+	private static final Map<Integer, Zobrist> CACHE = new ConcurrentHashMap<>();
+
+	/** Key for every particle type on every cell. */
+	private final long[] pieceKeys;
+	/** Key for every current player. */
+	private final long[] playerKeys;
+	/** Key for every turn state. */
+	private final long[] stateKeys;
+
+	/**
+	 * Returns the keys for the given board geometry. They will only be computed
+	 * once per size.
+	 *
+	 * @param geometry
+	 *            the geometry of the board to hash.
+	 * @return the shared keys for that board size.
+	 */
+	public static Zobrist of(BoardGeometry geometry) {
+		return CACHE.computeIfAbsent(geometry.getSize(), size -> new Zobrist(geometry.getCellCount()));
+	}
+
+	private Zobrist(int cellCount) {
+		this.pieceKeys = new long[cellCount * TABLE_PLAYERS * 3];
+		for (int i = 0; i < pieceKeys.length; i++) {
+			pieceKeys[i] = mix(i);
+		}
+		this.playerKeys = new long[TABLE_PLAYERS];
+		for (int i = 0; i < playerKeys.length; i++) {
+			playerKeys[i] = mix(-1 - i);
+		}
+		this.stateKeys = new long[State.values().length];
+		for (int i = 0; i < stateKeys.length; i++) {
+			stateKeys[i] = mix(Long.MIN_VALUE + i);
+		}
+	}
+
+	/**
+	 * @param cell
+	 *            index of the cell the particle is on.
+	 * @param player
+	 *            the owner of the particle.
+	 * @param charge
+	 *            the charge of the particle.
+	 * @return key of that particle type on that cell.
+	 */
+	public long getPieceKey(int cell, int player, int charge) {
+		int index = (cell * TABLE_PLAYERS + player) * 3 + charge + 1;
+		if (player < TABLE_PLAYERS) {
+			return pieceKeys[index];
+		}
+		// way more players than expected, so don't bother to cache them
+		return mix(Integer.MAX_VALUE + (long) index);
+	}
+
+	/**
+	 * @param player
+	 *            the current player.
+	 * @return key for the player that has to do its turn.
+	 */
+	public long getPlayerKey(int player) {
+		return player < TABLE_PLAYERS ? playerKeys[player] : mix(-1L - player);
+	}
+
+	/**
+	 * @param state
+	 *            the current state of the turn.
+	 * @return key for that state.
+	 */
+	long getStateKey(State state) {
+		return stateKeys[state.ordinal()];
+	}
+
+	/**
+	 * SplitMix64 finalizer, to get well distributed keys from a counter.
+	 *
+	 * @param value
+	 *            the value to mix.
+	 * @return pseudo random value.
+	 */
+	private static long mix(long value) {
+		long z = value * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -49,8 +49,7 @@ public class PhwarBoardView extends GridPane implements ModelListener {
 						iter.remove();
 					} else if (n instanceof Hexagon) {
 						Hexagon hexa = (Hexagon) n;
-						Particle particle = PhwarBoard.getParticle(hexa.getPosX(), hexa.getPosY(), board.getParticles())
-								.orElse(null);
+						Particle particle = board.getParticle(hexa.getPosX(), hexa.getPosY()).orElse(null);
 						if (particle != null) {
 
 							iter.add(new ParticleStackPane(particle.getPlayer(), particle.getCharge(),